@@ -0,0 +1,84 @@
+package com.zs.imagemanager;
+
+import com.zs.imagemanager.LruMemoryCache.Node;
+
+/**
+ * ڴ滺ڵķ˳Уڱ˫δʵĽڵ㣬βʵĽڵ
+ * <p/>
+ * ಻̰߳ȫģֻLruMemoryCacheevictionLockʹ
+ * @author zhangshuo
+ */
+final class AccessOrderQueue {
+
+	private final Node head;
+	
+	/** нڵĴС֮*/
+	private long size;
+	
+	AccessOrderQueue(){
+		head = new Node(null, null, 0);
+		head.prev = head;
+		head.next = head;
+	}
+	
+	boolean isEmpty(){
+		return head.next == head;
+	}
+	
+	long size(){
+		return size;
+	}
+	
+	/** @return δʵĽڵ㣬Ϊʱnull*/
+	Node peekFirst(){
+		return isEmpty() ? null : head.next;
+	}
+	
+	/** @return ڵڶеһڵ㣬ѾǶβʱnull*/
+	Node next(Node node){
+		return node.next == head ? null : node.next;
+	}
+	
+	/** ڵβ*/
+	void linkLast(Node node){
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+		node.queue = this;
+		size = size + node.size;
+	}
+	
+	/** ڵ뵽еnext֮ǰ*/
+	void linkBefore(Node node, Node next){
+		node.prev = next.prev;
+		node.next = next;
+		next.prev.next = node;
+		next.prev = node;
+		node.queue = this;
+		size = size + node.size;
+	}
+	
+	/** ڵӶƳ*/
+	void unlink(Node node){
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+		node.queue = null;
+		size = size - node.size;
+	}
+	
+	/** ڵƶβ*/
+	void moveToLast(Node node){
+		if(head.prev == node){
+			return;
+		}
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+	}
+}
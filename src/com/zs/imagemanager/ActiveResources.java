@@ -0,0 +1,98 @@
+package com.zs.imagemanager;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Դѱڴ滺̭ĳViewʾbitmap
+ * <p/>
+ * ֻԴãԴüʾbitmapViewͷ֮Ϊ0{@link ImageLoaderEngine}ƻڴ滺档
+ * ʾͼƬڴ滺̭ٴʾʱҪ´SDCard롣
+ * @author zhangshuo
+ */
+final class ActiveResources {
+
+	private final Map<MemoryCacheKey, ResourceWeakReference> activeBitmaps = new HashMap<MemoryCacheKey, ResourceWeakReference>();
+	
+	/** GCյbitmapӦûöУactiveBitmaps*/
+	private final ReferenceQueue<BitmapResource> referenceQueue = new ReferenceQueue<BitmapResource>();
+	
+	/**
+	 * keyӦԴ
+	 * @param key memoryCacheKey
+	 * @param resource
+	 */
+	synchronized void activate(MemoryCacheKey key, BitmapResource resource){
+		cleanReferenceQueue();
+		activeBitmaps.put(key, new ResourceWeakReference(key, resource, referenceQueue));
+		resource.activeKey = key;
+	}
+	
+	/**
+	 * @param key memoryCacheKey
+	 * @return keyӦԴΪһãûлѱͷʱnull
+	 */
+	synchronized BitmapResource acquire(MemoryCacheKey key){
+		cleanReferenceQueue();
+		ResourceWeakReference reference = activeBitmaps.get(key);
+		if(null == reference){
+			return null;
+		}
+		BitmapResource resource = reference.get();
+		if(null == resource || !resource.acquire()){
+			activeBitmaps.remove(key);
+			return null;
+		}
+		return resource;
+	}
+	
+	/**
+	 * ƳԴԴϼ¼keyңҪ
+	 * @param resource
+	 * @return ԴӦkeyԴڻԴʱnull
+	 */
+	synchronized MemoryCacheKey deactivate(BitmapResource resource){
+		cleanReferenceQueue();
+		MemoryCacheKey key = resource.activeKey;
+		if(null == key){
+			return null;
+		}
+		resource.activeKey = null;
+		//keyѾӦԴ߼¼ѱclear
+		ResourceWeakReference reference = activeBitmaps.get(key);
+		if(null == reference || reference.get() != resource){
+			return null;
+		}
+		activeBitmaps.remove(key);
+		return key;
+	}
+	
+	synchronized void clear(){
+		activeBitmaps.clear();
+		cleanReferenceQueue();
+	}
+	
+	/** ƳѱGCյԴ*/
+	private void cleanReferenceQueue(){
+		Reference<? extends BitmapResource> reference;
+		while ((reference = referenceQueue.poll()) != null) {
+			MemoryCacheKey key = ((ResourceWeakReference) reference).key;
+			//keyѾӦµãֻƳյһ
+			if(activeBitmaps.get(key) == reference){
+				activeBitmaps.remove(key);
+			}
+		}
+	}
+	
+	private static final class ResourceWeakReference extends WeakReference<BitmapResource> {
+		final MemoryCacheKey key;
+		
+		ResourceWeakReference(MemoryCacheKey key, BitmapResource resource, ReferenceQueue<BitmapResource> queue){
+			super(resource, queue);
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.zs.imagemanager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+
+/**
+ * übitmap
+ * <p/>
+ * ڴ滺桢ʾbitmapViewԳһãʹǰ{@link #acquire()}{@link #release()}
+ * Ϊ0ʱ֪ͨ{@link ResourceReleaser}bitmapŻڴ滺桢븴óػrecycle
+ * ҪȴGCҲʹеbitmap
+ * <p/>
+ * üΪ-1ʾԴѱͷţbitmapѽóػrecycle֮acquireʧܡ
+ * @author zhangshuo
+ */
+public final class BitmapResource {
+
+	private final Bitmap bitmap;
+	private final ResourceReleaser releaser;
+	private final AtomicInteger refCount;
+	/** õbitmapѵʱ䣨ȡؼ룩´Ĵ*/
+	private final long loadTimeMillis;
+	/** {@link ActiveResources}ʱӦkeyͷʱkeyƳֻActiveResources·*/
+	MemoryCacheKey activeKey;
+	
+	/**
+	 * Դ߳һ
+	 * @param bitmap
+	 * @param releaser Ϊ0ʱĻص
+	 */
+	public BitmapResource(Bitmap bitmap, ResourceReleaser releaser){
+		this(bitmap, releaser, 0);
+	}
+	
+	/**
+	 * Դ߳һ
+	 * @param bitmap
+	 * @param releaser Ϊ0ʱĻص
+	 * @param loadTimeMillis õbitmapѵʱ䣬{@link LruMemoryCache.Weigher}´ĴۼȨ
+	 */
+	public BitmapResource(Bitmap bitmap, ResourceReleaser releaser, long loadTimeMillis){
+		if(null == bitmap || null == releaser){
+			throw new NullPointerException("bitmap == null || releaser == null");
+		}
+		this.bitmap = bitmap;
+		this.releaser = releaser;
+		this.refCount = new AtomicInteger(1);
+		this.loadTimeMillis = loadTimeMillis;
+	}
+	
+	public Bitmap getBitmap(){
+		return bitmap;
+	}
+	
+	/** @return õbitmapѵʱ䣬λ룻δ֪ʱΪ0*/
+	public long getLoadTimeMillis(){
+		return loadTimeMillis;
+	}
+	
+	ResourceReleaser getReleaser(){
+		return releaser;
+	}
+	
+	/** @return ǰԴѱͷʱΪ-1*/
+	public int getRefCount(){
+		return refCount.get();
+	}
+	
+	/**
+	 * һ
+	 * @return false Դѱͷţʹ
+	 */
+	public boolean acquire(){
+		while (true) {
+			int count = refCount.get();
+			if(count < 0){
+				return false;
+			}
+			if(refCount.compareAndSet(count, count + 1)){
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * ͷһãΪ0ʱ֪ͨ{@link ResourceReleaser}
+	 */
+	public void release(){
+		int count = refCount.decrementAndGet();
+		if(count == 0){
+			releaser.onResourceReleased(this);
+		}else if(count < 0){
+			throw new IllegalStateException("BitmapResource is released more times than acquired");
+		}
+	}
+	
+	/**
+	 * Ϊ0ʱԴΪͷţ˺bitmapߴ븴óػrecycle
+	 * @return false Ϊ0ѱacquireѱͷţ߲ܴbitmap
+	 */
+	boolean markReleased(){
+		return refCount.compareAndSet(0, -1);
+	}
+	
+	/** Ϊ0ʱĻص*/
+	public static interface ResourceReleaser {
+		/**
+		 * ͷһõ߳лصacquireԴŻڴ滺棩
+		 * Ӧͨ{@link BitmapResource#markReleased()}Ǻٴbitmap
+		 * @param resource
+		 */
+		void onResourceReleased(BitmapResource resource);
+	}
+}
@@ -0,0 +1,313 @@
+package com.zs.imagemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.util.Log;
+
+/**
+ * СļĴ洢
+ * <p/>
+ * СĻ׷ӵļblob.0blob.1УÿڶεıšƫȶλλϢ{@link LruDiskCache}־У
+ * ȡʱڶļѴ򿪵FileChannelϰλöȡҪٴļҲռõinode
+ * ǰγ{@value #MAX_SEGMENT_SIZE}ֽں沢½һΣĶβд롣
+ * <p/>
+ * ݱɾ滻ֻڶмΪʧЧЧݵ{@value #COMPACT_LIVE_PERCENT}%ķΣ
+ * {@link LruDiskCache}ЧݸƵǰκɾѹ
+ * <p/>
+ * εĵǼϢthis·ʣȡݱɶεü֤ȡڼβᱻرպɾ
+ * @author zhangshuo
+ */
+final class BlobStore {
+
+	private final String TAG = BlobStore.class.getSimpleName();
+
+	/** ļǰ׺Ƕεı*/
+	static final String SEGMENT_PREFIX = "blob.";
+	/** ε󳤶*/
+	static final int MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+	/** ĶЧݵڸðٷֱʱҪѹ*/
+	static final int COMPACT_LIVE_PERCENT = 50;
+
+	private final File dir;
+
+	/** δɾĶΣ*/
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+	/** ǰдĶΣûʱΪnull*/
+	private Segment current;
+
+	/** һ½εıţպҲãѹ̲߳ѾɱΪ¶*/
+	private int nextId;
+
+	BlobStore(File dir){
+		this.dir = dir;
+	}
+
+	/**
+	 * гĿ¼еĶļ
+	 * @return αżļ
+	 */
+	synchronized Map<Integer, Long> listSegments(){
+		Map<Integer, Long> lengths = new HashMap<Integer, Long>();
+		File[] files = dir.listFiles();
+		if(null == files){
+			return lengths;
+		}
+		for (File file : files) {
+			int id = parseSegmentId(file.getName());
+			if(id >= 0){
+				lengths.put(id, file.length());
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * ǼǼݵĶΣɾĶļеĶζΪĶΣ֮д¶
+	 * @param liveBytes αżЧݵ
+	 */
+	synchronized void open(Map<Integer, Long> liveBytes){
+		File[] files = dir.listFiles();
+		if(null == files){
+			return;
+		}
+		for (File file : files) {
+			int id = parseSegmentId(file.getName());
+			if(id < 0){
+				continue;
+			}
+			Long live = liveBytes.get(id);
+			if(null == live){
+				file.delete();
+				continue;
+			}
+			Segment segment = new Segment(id, file);
+			segment.length = file.length();
+			segment.liveBytes = live;
+			segments.put(id, segment);
+			nextId = Math.max(nextId, id + 1);
+		}
+	}
+
+	/**
+	 * ׷һݵǰΣǰʱ½һ
+	 * @param data positionlimitΪҪд
+	 * @return ݵλ
+	 * @throws IOException
+	 */
+	synchronized Slot append(ByteBuffer data) throws IOException {
+		int length = data.remaining();
+		if(null == current || (current.length > 0 && current.length + length > MAX_SEGMENT_SIZE)){
+			Segment segment = new Segment(nextId, new File(dir, SEGMENT_PREFIX + nextId));
+			nextId++;
+			segment.open();
+			segments.put(segment.id, segment);
+			current = segment;
+		}
+		long offset = current.length;
+		FileChannel channel = current.channel();
+		long position = offset;
+		while (data.hasRemaining()) {
+			position = position + channel.write(data, position);
+		}
+		current.length = current.length + length;
+		current.liveBytes = current.liveBytes + length;
+		return new Slot(current.id, offset, length);
+	}
+
+	/**
+	 * @see #append(ByteBuffer)
+	 */
+	Slot append(byte[] data, int count) throws IOException {
+		return append(ByteBuffer.wrap(data, 0, count));
+	}
+
+	/**
+	 * ȡöβüȡɺ{@link #release(Segment)}
+	 * @param id α
+	 * @return ѱɾ޷ʱnull
+	 */
+	synchronized Segment acquire(int id){
+		Segment segment = segments.get(id);
+		if(null == segment){
+			return null;
+		}
+		try {
+			segment.open();
+		} catch (IOException e) {
+			Log.e(TAG, "acquire--򿪶ļʧ->" + segment.file, e);
+			return null;
+		}
+		segment.refCount++;
+		return segment;
+	}
+
+	/**
+	 * ͷ{@link #acquire(int)}ȡõĶΣѱɾѹգûȡʱرղɾļ
+	 * @param segment
+	 */
+	synchronized void release(Segment segment){
+		segment.refCount--;
+		if(segment.retired && segment.refCount == 0){
+			segment.delete();
+		}
+	}
+
+	/**
+	 * λöȡһݣ
+	 * @param segment ͨ{@link #acquire(int)}ȡõĶ
+	 * @param offset
+	 * @param length
+	 * @return positionΪ0limitΪlengthdirect buffer
+	 * @throws IOException ȡʧܣ߶ļȼ¼Ķ
+	 */
+	ByteBuffer read(Segment segment, long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+		FileChannel channel = segment.channel();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset + buffer.position());
+			if(read < 0){
+				throw new IOException("segment " + segment.id + " truncated at " + (offset + buffer.position()));
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * һݼΪʧЧ
+	 * @param id α
+	 * @param length ݳ
+	 */
+	synchronized void free(int id, long length){
+		Segment segment = segments.get(id);
+		if(null != segment){
+			segment.liveBytes = segment.liveBytes - length;
+		}
+	}
+
+	/**
+	 * @return Ҫѹķεıţûʱ-1
+	 */
+	synchronized int nextCompactionCandidate(){
+		for (Segment segment : segments.values()) {
+			if(segment != current && segment.liveBytes * 100 < segment.length * COMPACT_LIVE_PERCENT){
+				return segment.id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * ɾΣеȫƵλʧЧڱȡʱһ{@link #release(Segment)}ʱɾ
+	 * @param id α
+	 * @return εĳȣβʱ0
+	 */
+	synchronized long retire(int id){
+		Segment segment = segments.remove(id);
+		if(null == segment){
+			return 0;
+		}
+		if(segment == current){
+			current = null;
+		}
+		segment.retired = true;
+		if(segment.refCount == 0){
+			segment.delete();
+		}
+		return segment.length;
+	}
+
+	/**
+	 * ɾжΣڽеĶȡʧܣδд
+	 */
+	synchronized void clear(){
+		Iterator<Segment> it = segments.values().iterator();
+		while (it.hasNext()) {
+			Segment segment = it.next();
+			it.remove();
+			segment.retired = true;
+			segment.delete();
+		}
+		current = null;
+	}
+
+	/**
+	 * @param name ļ
+	 * @return ļıţǶļʱ-1
+	 */
+	static int parseSegmentId(String name){
+		if(!name.startsWith(SEGMENT_PREFIX)){
+			return -1;
+		}
+		try {
+			int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length()));
+			return id < 0 ? -1 : id;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/** һݵλ*/
+	static final class Slot {
+		final int segment;
+		final long offset;
+		final int length;
+
+		Slot(int segment, long offset, int length){
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/** һļ*/
+	static final class Segment {
+		final int id;
+		final File file;
+		/** BlobStore´򿪼رգ򿪺ⰴλöд*/
+		private volatile RandomAccessFile raf;
+		/** дĳ*/
+		long length;
+		/** Ч*/
+		long liveBytes;
+		int refCount;
+		/** ѴBlobStoreƳٱȡ*/
+		boolean retired;
+
+		Segment(int id, File file){
+			this.id = id;
+			this.file = file;
+		}
+
+		void open() throws IOException {
+			if(null == raf){
+				raf = new RandomAccessFile(file, "rw");
+			}
+		}
+
+		FileChannel channel() throws IOException {
+			RandomAccessFile raf = this.raf;
+			if(null == raf){
+				throw new IOException("segment " + id + " closed");
+			}
+			return raf.getChannel();
+		}
+
+		void delete(){
+			if(null != raf){
+				IoUtils.closeSilently(raf);
+				raf = null;
+			}
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.zs.imagemanager;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ByteBuffer}ȡݵ֧mark/resetʱߺֱreset¶ȡ
+ * @author zhangshuo
+ */
+final class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+	
+	/**
+	 * @param buffer 䵱ǰpositionlimit޸bufferposition߳ͬʱȡʱӦʹ{@link ByteBuffer#duplicate()}
+	 */
+	ByteBufferInputStream(ByteBuffer buffer){
+		this.buffer = buffer;
+		buffer.mark();
+	}
+	
+	@Override
+	public int read(){
+		if(!buffer.hasRemaining()){
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len){
+		if(len == 0){
+			return 0;
+		}
+		if(!buffer.hasRemaining()){
+			return -1;
+		}
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(b, off, count);
+		return count;
+	}
+	
+	@Override
+	public long skip(long n){
+		if(n <= 0){
+			return 0;
+		}
+		int count = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + count);
+		return count;
+	}
+	
+	@Override
+	public int available(){
+		return buffer.remaining();
+	}
+	
+	@Override
+	public boolean markSupported(){
+		return true;
+	}
+	
+	@Override
+	public synchronized void mark(int readlimit){
+		buffer.mark();
+	}
+	
+	@Override
+	public synchronized void reset(){
+		buffer.reset();
+	}
+}
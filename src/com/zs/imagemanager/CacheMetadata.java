@@ -0,0 +1,126 @@
+package com.zs.imagemanager;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * SDCardݵHTTPϢӦ֤ϢETagLast-ModifiedЧڽֹʱ
+ * <p/>
+ * {@link com.zs.imagemanager.downloader.BaseImageDownloader}Ӧͷн滺ݱ{@link LruDiskCache}־С
+ * Чֱʹûݣں֤Ϣ󣬷304ʱֻЧڣҪء
+ * @author zhangshuo
+ */
+public final class CacheMetadata {
+
+	/** ־бʾûиֵ*/
+	private static final String NONE = "-";
+
+	private final String etag;
+	private final String lastModified;
+	private final long expireTime;
+
+	/**
+	 * @param etag ETagӦͷΪnull
+	 * @param lastModified Last-ModifiedӦͷԭʼֵΪnull
+	 * @param expireTime Чڽֹʱ䣬{@link System#currentTimeMillis()}
+	 */
+	public CacheMetadata(String etag, String lastModified, long expireTime){
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.expireTime = expireTime;
+	}
+
+	public String getEtag(){
+		return etag;
+	}
+
+	public String getLastModified(){
+		return lastModified;
+	}
+
+	public long getExpireTime(){
+		return expireTime;
+	}
+
+	/**
+	 * @param now {@link System#currentTimeMillis()}
+	 * @return ǷЧڣҪ֤
+	 */
+	public boolean isFresh(long now){
+		return now < expireTime;
+	}
+
+	/**
+	 * @return Ƿ֤ϢԷ
+	 */
+	public boolean hasValidators(){
+		return null != etag || null != lastModified;
+	}
+
+	/**
+	 * 304304ӦеϢԭϢ304Ӧûе֤Ϣԭ
+	 * @param update 304ӦеϢΪnull
+	 * @param now
+	 * @return
+	 */
+	public CacheMetadata merge(CacheMetadata update, long now){
+		if(null == update){
+			return new CacheMetadata(etag, lastModified, now);
+		}
+		return new CacheMetadata(null != update.etag ? update.etag : etag,
+				null != update.lastModified ? update.lastModified : lastModified, update.expireTime);
+	}
+
+	/**
+	 * @return ־еĸʽЧڽֹʱ䡢ETagLast-ModifiedԿոֵָURL
+	 */
+	String encode(){
+		return expireTime + " " + encodeValue(etag) + ' ' + encodeValue(lastModified);
+	}
+
+	/**
+	 * @param values {@link #encode()}ոֵָ
+	 * @return
+	 * @throws NumberFormatException ʽ
+	 */
+	static CacheMetadata decode(String[] values){
+		if(values.length != 3){
+			throw new NumberFormatException("unexpected metadata length: " + values.length);
+		}
+		return new CacheMetadata(decodeValue(values[1]), decodeValue(values[2]), Long.parseLong(values[0]));
+	}
+
+	private static String encodeValue(String value){
+		if(null == value || value.length() == 0){
+			return NONE;
+		}
+		if(NONE.equals(value)){
+			//URLEncoderת'-'ʾûֵNONE
+			return "%2D";
+		}
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static String decodeValue(String value){
+		if(NONE.equals(value)){
+			return null;
+		}
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		} catch (IllegalArgumentException e) {
+			throw new NumberFormatException("unexpected metadata value: " + value);
+		}
+	}
+
+	@Override
+	public String toString(){
+		return String.format("CacheMetadata[etag=%s,lastModified=%s,expireTime=%d]", etag, lastModified, expireTime);
+	}
+}
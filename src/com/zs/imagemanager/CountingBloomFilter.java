@@ -0,0 +1,124 @@
+package com.zs.imagemanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ¡
+ * <p/>
+ * ÿԪӳ䵽{@value #HASH_COUNT}4λʱ1Ƴʱ1һΪ0Ԫһڣܴڡ
+ * ԤԪ{@value #SLOTS_PER_ENTRY}ԪԤֵʱԼ1%
+ * ﵽ15ֻУ©С
+ * <p/>
+ * ͨCAS£{@link #mightContain(String)}{@link #add(String)}{@link #remove(String)}ɶԵã
+ * ֻƳѼԪء
+ * @author zhangshuo
+ */
+final class CountingBloomFilter {
+
+	/** ÿԪӳļ*/
+	static final int HASH_COUNT = 7;
+	/** ÿԤԪطļ*/
+	static final int SLOTS_PER_ENTRY = 10;
+
+	private static final int COUNTERS_PER_WORD = 16;
+	private static final long COUNTER_MASK = 0xFL;
+
+	/** ÿlong16*/
+	private final AtomicLongArray words;
+	private final int slotCount;
+	private final int capacity;
+
+	/**
+	 * @param expectedEntries ԤƵԪ
+	 */
+	CountingBloomFilter(int expectedEntries){
+		capacity = Math.max(expectedEntries, 1);
+		long slots = (long) capacity * SLOTS_PER_ENTRY;
+		int wordCount = (int) Math.min(Integer.MAX_VALUE / COUNTERS_PER_WORD, (slots + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+		words = new AtomicLongArray(wordCount);
+		slotCount = wordCount * COUNTERS_PER_WORD;
+	}
+
+	void add(String name){
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			update(slot(h1 + i * h2), 1);
+		}
+	}
+
+	void remove(String name){
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			update(slot(h1 + i * h2), -1);
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return false һڣtrue ܴ
+	 */
+	boolean mightContain(String name){
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int slot = slot(h1 + i * h2);
+			long word = words.get(slot / COUNTERS_PER_WORD);
+			if(((word >>> shift(slot)) & COUNTER_MASK) == 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return ԤƵԪʵԪ϶ʱӦµԪؽ
+	 */
+	int capacity(){
+		return capacity;
+	}
+
+	private void update(int slot, int delta){
+		int index = slot / COUNTERS_PER_WORD;
+		int shift = shift(slot);
+		while (true) {
+			long word = words.get(index);
+			long counter = (word >>> shift) & COUNTER_MASK;
+			//ѱ͵ļ֪ʵֲֵ
+			if(counter == COUNTER_MASK || (delta < 0 && counter == 0)){
+				return;
+			}
+			long updated = (word & ~(COUNTER_MASK << shift)) | ((counter + delta) << shift);
+			if(words.compareAndSet(index, word, updated)){
+				return;
+			}
+		}
+	}
+
+	private int slot(int hash){
+		return (hash & Integer.MAX_VALUE) % slotCount;
+	}
+
+	private static int shift(int slot){
+		return (slot % COUNTERS_PER_WORD) * 4;
+	}
+
+	/**
+	 * ַhashCodeչΪ64λߵ32λֱΪhash
+	 */
+	private static long hash(String name){
+		long h = name.hashCode();
+		h = h * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		//ڶhashΪ֤HASH_COUNTλòȫͬ
+		return h | (1L << 32);
+	}
+}
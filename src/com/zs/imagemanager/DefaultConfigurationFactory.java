@@ -29,6 +29,7 @@ import android.content.Context;
 import android.os.Environment;
 
 import com.zs.imagemanager.decoder.BaseImageDecoder;
+import com.zs.imagemanager.decoder.DecodeBudget;
 import com.zs.imagemanager.decoder.ImageDecoder;
 import com.zs.imagemanager.downloader.BaseImageDownloader;
 import com.zs.imagemanager.downloader.ImageDownloader;
@@ -54,11 +55,28 @@ public class DefaultConfigurationFactory {
 	}
 
 	/**
-	 * Creates default implementation of {@link DiskCache} depends on incoming parameters
+	 * Creates default implementation of {@link DiskCache} depends on incoming parameters<br />
+	 * Images not larger than {@link LruDiskCache#DEFAULT_PACK_THRESHOLD} are packed into segment files.<br />
+	 * Default cache size (<b>diskCacheSize</b> = 0) is computed from free storage space by {@link DiskCacheSizePolicy}.
 	 */
 	public static LruDiskCache createDiskCache(Context context, long diskCacheSize) {
+		return createDiskCache(context, diskCacheSize, LruDiskCache.DEFAULT_PACK_THRESHOLD);
+	}
+
+	/**
+	 * Creates {@link LruDiskCache} which packs images not larger than <b>packThreshold</b> into segment files
+	 * (0 - every image is stored in its own file)<br />
+	 * Default cache size (<b>diskCacheSize</b> = 0) is computed from free storage space by {@link DiskCacheSizePolicy}
+	 * and re-evaluated while the cache grows or storage gets low.
+	 */
+	public static LruDiskCache createDiskCache(Context context, long diskCacheSize, int packThreshold) {
 		File cacheDir = createReserveDiskCacheDir(context);
-		LruDiskCache diskCache = new LruDiskCache(cacheDir, diskCacheSize);
+		if (diskCacheSize == 0) {
+			LruDiskCache diskCache = new LruDiskCache(cacheDir, new FileNameGenerator(), DiskCacheSizePolicy.DEFAULT_MIN_SIZE, packThreshold);
+			diskCache.setSizePolicy(new DiskCacheSizePolicy());
+			return diskCache;
+		}
+		LruDiskCache diskCache = new LruDiskCache(cacheDir, new FileNameGenerator(), diskCacheSize, packThreshold);
 		return diskCache;
 	}
 
@@ -75,11 +93,29 @@ public class DefaultConfigurationFactory {
 	 * Creates default implementation of {@link MemoryCache} - {@link LruMemoryCache}<br />
 	 * Default cache size = 1/8 of available app memory.
 	 */
-	public static LruMemoryCache createMemoryCache(Context context, int memoryCacheSize) {
+	public static LruMemoryCache createMemoryCache(Context context, long memoryCacheSize) {
+		return createMemoryCache(context, memoryCacheSize, LruMemoryCache.Policy.LRU);
+	}
+
+	/**
+	 * Creates {@link LruMemoryCache} with passed {@linkplain LruMemoryCache.Policy eviction policy}<br />
+	 * Default cache size = 1/8 of available app memory.
+	 */
+	public static LruMemoryCache createMemoryCache(Context context, long memoryCacheSize, LruMemoryCache.Policy policy) {
+		return createMemoryCache(context, memoryCacheSize, policy, LruMemoryCache.BYTE_COUNT_WEIGHER);
+	}
+
+	/**
+	 * Creates {@link LruMemoryCache} with passed {@linkplain LruMemoryCache.Policy eviction policy} and
+	 * {@linkplain LruMemoryCache.Weigher weigher}<br />
+	 * Default cache size = 1/8 of available app memory.
+	 */
+	public static LruMemoryCache createMemoryCache(Context context, long memoryCacheSize, LruMemoryCache.Policy policy,
+			LruMemoryCache.Weigher weigher) {
 		if (memoryCacheSize == 0) {
-			memoryCacheSize = (int) (Runtime.getRuntime().maxMemory() / 8);
+			memoryCacheSize = Runtime.getRuntime().maxMemory() / 8;
 		}
-		return new LruMemoryCache(context, memoryCacheSize);
+		return new LruMemoryCache(context, memoryCacheSize, policy, weigher);
 	}
 
 	/** Creates default implementation of {@link ImageDownloader} - {@link BaseImageDownloader} */
@@ -92,6 +128,54 @@ public class DefaultConfigurationFactory {
 		return new BaseImageDecoder();
 	}
 
+	/** Creates {@link BaseImageDecoder} which reuses bitmaps from passed pool */
+	public static ImageDecoder createImageDecoder(LruBitmapPool bitmapPool) {
+		return new BaseImageDecoder(bitmapPool);
+	}
+
+	/** Creates {@link BaseImageDecoder} which reuses bitmaps from passed pool and limits concurrent decoding memory */
+	public static ImageDecoder createImageDecoder(LruBitmapPool bitmapPool, DecodeBudget decodeBudget) {
+		return new BaseImageDecoder(bitmapPool, decodeBudget);
+	}
+
+	/**
+	 * Creates {@link DecodeBudget}<br />
+	 * Default budget = 1/4 of available app memory.
+	 */
+	public static DecodeBudget createDecodeBudget(long decodeBudgetSize) {
+		if (decodeBudgetSize == 0) {
+			decodeBudgetSize = Runtime.getRuntime().maxMemory() / 4;
+		}
+		return new DecodeBudget(decodeBudgetSize);
+	}
+
+	/**
+	 * Creates {@link LruBitmapPool}<br />
+	 * Default pool size = 1/16 of available app memory.
+	 */
+	public static LruBitmapPool createBitmapPool(int bitmapPoolSize) {
+		if (bitmapPoolSize == 0) {
+			bitmapPoolSize = (int) (Runtime.getRuntime().maxMemory() / 16);
+		}
+		return new LruBitmapPool(bitmapPoolSize);
+	}
+
+	/**
+	 * Creates {@link EncodedMemoryCache}<br />
+	 * Default cache size = 1/16 of available app memory.
+	 */
+	public static EncodedMemoryCache createEncodedMemoryCache(int encodedCacheSize) {
+		if (encodedCacheSize == 0) {
+			encodedCacheSize = (int) (Runtime.getRuntime().maxMemory() / 16);
+		}
+		return new EncodedMemoryCache(encodedCacheSize);
+	}
+
+	/** Creates {@link FailureCache} with default TTL for every {@linkplain FailReason.FailType fail type} */
+	public static FailureCache createFailureCache() {
+		return new FailureCache();
+	}
+
 	/** Creates default implementation of {@linkplain ThreadFactory thread factory} for task executor */
 	private static ThreadFactory createThreadFactory(int threadPriority, String threadNamePrefix) {
 		return new DefaultThreadFactory(threadPriority, threadNamePrefix);
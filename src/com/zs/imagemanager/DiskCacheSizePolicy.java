@@ -0,0 +1,103 @@
+package com.zs.imagemanager;
+
+import java.io.File;
+
+import android.os.Build;
+import android.os.StatFs;
+
+/**
+ * SDCardļ
+ * <p/>
+ * ΪĿ¼ڷÿռһٷֱȣ[minSize, maxSize]֮䣻ռõĿռҲÿռ䣬
+ * 򻺴ԽԽСʣռʱΪÿռһ룬ΪminSizeѷд
+ * <p/>
+ * {@link LruDiskCache}ά߳еãÿдһдʧܻյ洢ռ䲻֪ͨ¼㡣
+ * @author zhangshuo
+ */
+public class DiskCacheSizePolicy {
+
+	/** Ĭռÿռİٷֱ*/
+	public static final int DEFAULT_PERCENT = 10;
+	/** ĬϵС*/
+	public static final long DEFAULT_MIN_SIZE = 10 * 1024 * 1024;
+	/** Ĭϵ*/
+	public static final long DEFAULT_MAX_SIZE = 4L * 1024 * 1024 * 1024;
+
+	private final int percent;
+	private final long minSize;
+	private final long maxSize;
+
+	public DiskCacheSizePolicy(){
+		this(DEFAULT_PERCENT, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param percent ռÿռİٷֱȣ1~100
+	 * @param minSize Сÿռ䲻ʱٱ֤
+	 * @param maxSize 
+	 */
+	public DiskCacheSizePolicy(int percent, long minSize, long maxSize){
+		if(percent <= 0 || percent > 100){
+			throw new IllegalArgumentException("percent must be between 1 and 100");
+		}
+		if(minSize < 0 || maxSize < minSize){
+			throw new IllegalArgumentException("0 <= minSize <= maxSize required");
+		}
+		this.percent = percent;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * 㻺
+	 * @param dir Ŀ¼
+	 * @param usedSize 浱ǰռõĿռ
+	 * @return ޷ȡϢʱ-1
+	 */
+	public long computeMaxSize(File dir, long usedSize){
+		long available = getAvailableBytes(dir);
+		if(available < 0){
+			return -1;
+		}
+		long usable = available + usedSize;
+		long size = usable / 100 * percent;
+		size = Math.max(size, minSize);
+		size = Math.min(size, maxSize);
+		return Math.min(size, usable / 2);
+	}
+
+	public int getPercent(){
+		return percent;
+	}
+
+	public long getMinSize(){
+		return minSize;
+	}
+
+	public long getMaxSize(){
+		return maxSize;
+	}
+
+	/**
+	 * @param dir
+	 * @return ڷĿֽĿ¼ڵԭ޷ȡʱ-1
+	 */
+	@SuppressWarnings("deprecation")
+	static long getAvailableBytes(File dir){
+		try {
+			StatFs statFs = new StatFs(dir.getPath());
+			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2){
+				return statFs.getAvailableBytes();
+			}
+			//API 18ֻintĿСǰתΪlong
+			return (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public String toString(){
+		return String.format("DiskCacheSizePolicy[percent=%d,minSize=%d,maxSize=%d]", percent, minSize, maxSize);
+	}
+}
@@ -34,16 +34,17 @@ final class DisplayBitmapTask implements Runnable {
 	private static final String LOG_TASK_CANCELLED_IMAGEAWARE_REUSED = "ImageAware is reused for another image. Task is cancelled. [%s]";
 	private static final String LOG_TASK_CANCELLED_IMAGEAWARE_COLLECTED = "ImageAware was collected by GC. Task is cancelled. [%s]";
 
-	private final Bitmap bitmap;
+	/** holds one reference which is handed over to the ImageAware on display or released on cancel */
+	private final BitmapResource resource;
 	private final String imageUri;
 	private final ImageViewAware imageAware;
-	private final String memoryCacheKey;
+	private final MemoryCacheKey memoryCacheKey;
 	private final ImageLoadingListener listener;
 	private final ImageLoaderEngine engine;
 
-	public DisplayBitmapTask(Bitmap bitmap, String uri, String memoryCacheKey, ImageViewAware imageAware,
+	public DisplayBitmapTask(BitmapResource resource, String uri, MemoryCacheKey memoryCacheKey, ImageViewAware imageAware,
 			ImageLoadingListener listener, ImageLoaderEngine engine) {
-		this.bitmap = bitmap;
+		this.resource = resource;
 		this.imageUri = uri;
 		this.imageAware = imageAware;
 		this.memoryCacheKey = memoryCacheKey;
@@ -55,13 +56,17 @@ final class DisplayBitmapTask implements Runnable {
 	public void run() {
 		if (imageAware.isCollected()) {
 			Log.d(TAG, LOG_TASK_CANCELLED_IMAGEAWARE_COLLECTED + "-->" + memoryCacheKey);
+			resource.release();
 			listener.onLoadingCancelled(imageUri, imageAware.getWrappedView());
 		} else if (isViewWasReused()) {
 			Log.d(TAG, LOG_TASK_CANCELLED_IMAGEAWARE_REUSED + "-->" + memoryCacheKey);
+			resource.release();
 			listener.onLoadingCancelled(imageUri, imageAware.getWrappedView());
 		} else {
 			Log.d(TAG, LOG_DISPLAY_IMAGE_IN_IMAGEAWARE + "-->" + memoryCacheKey);
+			Bitmap bitmap = resource.getBitmap();
 			imageAware.setImageBitmap(bitmap);
+			engine.markDisplayed(imageAware, resource);
 			engine.cancelDisplayTaskFor(imageAware);
 			listener.onLoadingComplete(imageUri, imageAware.getWrappedView(), bitmap);
 		}
@@ -69,7 +74,7 @@ final class DisplayBitmapTask implements Runnable {
 
 	/** Checks whether memory cache key (image URI) for current ImageAware is actual */
 	private boolean isViewWasReused() {
-		String currentCacheKey = engine.getLoadingUriForView(imageAware);
+		MemoryCacheKey currentCacheKey = engine.getLoadingKeyForView(imageAware);
 		return !memoryCacheKey.equals(currentCacheKey);
 	}
 }
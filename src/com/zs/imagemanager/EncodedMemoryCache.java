@@ -0,0 +1,215 @@
+package com.zs.imagemanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ڴ滺
+ * <p/>
+ * λ{@link LruMemoryCache}{@link LruDiskCache}֮䣬uriʹõͼƬļԭʼѹģֽڣ
+ * ݱڶdirect ByteBufferУжڴޣʹõ˳̭
+ * ѹͼƬֻͨнbitmap1/10ң˿ööͼƬֻһν롢ҪSDCardʾ
+ * @author zhangshuo
+ */
+public class EncodedMemoryCache {
+
+	/** ļռ޵ļ֮һһŴͼл*/
+	private static final int MAX_ENTRY_SIZE_DIVISOR = 4;
+	
+	/** ռڴ*/
+	private final int maxSize;
+	
+	/** ǰЧڴޣڴʱ*/
+	private int currentMaxSize;
+	
+	/** ǰռڴ*/
+	private int size;
+	
+	/** ˳Уʵβ*/
+	private final LinkedHashMap<String, ByteBuffer> map = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true);
+	
+	private int hitCount;
+	private int missCount;
+	private int evictionCount;
+	
+	/**
+	 * @param maxSize ռڴ
+	 */
+	public EncodedMemoryCache(int maxSize){
+		if(maxSize <= 0){
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		this.maxSize = maxSize;
+		this.currentMaxSize = maxSize;
+	}
+	
+	/**
+	 * @param uri
+	 * @return uriӦıݵֻpositionΪ0߿ȡʱnull
+	 */
+	public synchronized ByteBuffer get(String uri){
+		if(null == uri){
+			throw new NullPointerException("uri == null");
+		}
+		ByteBuffer buffer = map.get(uri);
+		if(null == buffer){
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return buffer.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * жǷuriıݣı˳
+	 * @param uri
+	 * @return
+	 */
+	public synchronized boolean containsKey(String uri){
+		return map.containsKey(uri);
+	}
+	
+	/**
+	 * ļȫݶڴ沢浽uri£ļʱ
+	 * @param uri
+	 * @param file SDCardеͼƬļ
+	 * @return ͬ{@link #get(String)}ļʱnullӦֱӴļ
+	 * @throws IOException
+	 */
+	public ByteBuffer load(String uri, File file) throws IOException {
+		long length = file.length();
+		if(length <= 0 || length > maxEntrySize()){
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+		FileInputStream is = new FileInputStream(file);
+		try {
+			FileChannel channel = is.getChannel();
+			while (buffer.hasRemaining()) {
+				if(channel.read(buffer) < 0){
+					//ȡļض
+					return null;
+				}
+			}
+		} finally {
+			IoUtils.closeSilently(is);
+		}
+		buffer.flip();
+		put(uri, buffer);
+		return buffer.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * ݣbufferpositionlimitΪЧݣ߲Ӧ޸buffer
+	 * @param uri
+	 * @param buffer
+	 * @return false ݹδ
+	 */
+	public synchronized boolean put(String uri, ByteBuffer buffer){
+		if(null == uri || null == buffer){
+			throw new NullPointerException("uri == null || buffer == null");
+		}
+		ByteBuffer value = buffer.slice();
+		int valueSize = value.capacity();
+		if(valueSize > maxEntrySize()){
+			return false;
+		}
+		ByteBuffer previous = map.put(uri, value);
+		size = size + valueSize;
+		if(null != previous){
+			size = size - previous.capacity();
+		}
+		trimToSize(currentMaxSize);
+		return true;
+	}
+	
+	/**
+	 * Ƴuriıݣ޷ʱ
+	 * @param uri
+	 */
+	public synchronized void remove(String uri){
+		ByteBuffer previous = map.remove(uri);
+		if(null != previous){
+			size = size - previous.capacity();
+		}
+	}
+	
+	/**
+	 * Ƴδʵݣֱʣµռڴ治maxSize
+	 * @param maxSize ڴ-1
+	 */
+	public synchronized void trimToSize(int maxSize){
+		Iterator<Map.Entry<String, ByteBuffer>> it = map.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, ByteBuffer> toEvict = it.next();
+			size = size - toEvict.getValue().capacity();
+			it.remove();
+			evictionCount++;
+		}
+		if(map.isEmpty() && size != 0){
+			throw new IllegalStateException(getClass().getName() + ".size is inconsistent: " + size);
+		}
+	}
+	
+	/**
+	 * ǰЧڴޣƳ޵
+	 * @param multiplier ڹʱָmaxSizeı0~1Ϊ1ʱָԭޣΪ0ʱ
+	 */
+	public synchronized void setSizeMultiplier(float multiplier){
+		if(multiplier < 0 || multiplier > 1){
+			throw new IllegalArgumentException("multiplier must be between 0 and 1");
+		}
+		currentMaxSize = Math.round(maxSize * multiplier);
+		trimToSize(currentMaxSize);
+	}
+	
+	/**
+	 * ջ
+	 */
+	public void clear(){
+		trimToSize(-1);
+	}
+	
+	public synchronized int size(){
+		return size;
+	}
+	
+	public int maxSize(){
+		return maxSize;
+	}
+	
+	public synchronized int currentMaxSize(){
+		return currentMaxSize;
+	}
+	
+	/**
+	 * @return ǰֽʱ
+	 */
+	public synchronized int maxEntrySize(){
+		return currentMaxSize / MAX_ENTRY_SIZE_DIVISOR;
+	}
+	
+	public synchronized int getHitCount(){
+		return hitCount;
+	}
+	
+	public synchronized int getMissCount(){
+		return missCount;
+	}
+	
+	public synchronized int getEvictionCount(){
+		return evictionCount;
+	}
+	
+	@Override
+	public synchronized String toString(){
+		return String.format("EncodedMemoryCache[maxSize=%d,currentMaxSize=%d,size=%d,hits=%d,misses=%d,evictions=%d]",
+				maxSize, currentMaxSize, size, hitCount, missCount, evictionCount);
+	}
+}
@@ -0,0 +1,30 @@
+package com.zs.imagemanager;
+
+import com.zs.imagemanager.LruMemoryCache.Node;
+
+/**
+ * ڴ滺̭ԣڵķ˳Լһ̭Ľڵ
+ * <p/>
+ * зֻLruMemoryCacheevictionLockµãʵ಻Ҫ̰߳ȫ
+ * @author zhangshuo
+ */
+interface EvictionPolicy {
+
+	/** ½ڵ뻺*/
+	void onAdd(Node node);
+	
+	/** ڵ㱻ʣطŶʱã*/
+	void onAccess(Node node);
+	
+	/** ڵ㱻Ƴ滻removḙ*/
+	void onRemove(Node node);
+	
+	/**
+	 * ѡһ̭Ľڵ㣬÷Ƴڵ㣬ɵ{@link #onRemove(Node)}
+	 * @return Ϊʱnull
+	 */
+	Node selectVictim();
+	
+	/** һ̭治ٳʱãֿṷ̂κνڵ*/
+	void onEvictionFinished();
+}
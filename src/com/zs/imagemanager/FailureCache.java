@@ -0,0 +1,119 @@
+package com.zs.imagemanager;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.os.SystemClock;
+
+import com.zs.imagemanager.FailReason.FailType;
+
+/**
+ * ʧܵuri
+ * <p/>
+ * ¼ػʧܵuriʧͣЧٴμʱֱӰʧܴٷ磬ӷռüֱ߳ʱ
+ * ЧڰʧãͬһuriʧʱÿμӱΪ{@link #MAX_TTL_MILLIS}سɹƳ¼
+ * ЧΪ0Ͳ¼ĬOUT_OF_MEMORYNETWORK_DENIEDuri޹أ¼
+ * <p/>
+ * ౣ{@value #MAX_ENTRIES}¼ʱƳδʧܵļ¼
+ * @author zhangshuo
+ */
+public class FailureCache {
+
+	/** ౣļ¼*/
+	public static final int MAX_ENTRIES = 256;
+	/** ʧʱЧڵޣ1Сʱ*/
+	public static final long MAX_TTL_MILLIS = 60 * 60 * 1000;
+
+	/** ʧ͵һʧܵЧ*/
+	private final EnumMap<FailType, Long> baseTtls = new EnumMap<FailType, Long>(FailType.class);
+
+	/** һʧܵȺУõǰ*/
+	private final LinkedHashMap<String, Failure> failures = new LinkedHashMap<String, Failure>(16, 0.75f, false) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	public FailureCache(){
+		baseTtls.put(FailType.IO_ERROR, 30 * 1000L);
+		baseTtls.put(FailType.DECODING_ERROR, 5 * 60 * 1000L);
+		baseTtls.put(FailType.UNKNOWN, 60 * 1000L);
+		baseTtls.put(FailType.OUT_OF_MEMORY, 0L);
+		baseTtls.put(FailType.NETWORK_DENIED, 0L);
+	}
+
+	/**
+	 * ʧ͵һʧܵЧ
+	 * @param type
+	 * @param ttlMillis 0򲻼¼͵ʧ
+	 */
+	public synchronized void setBaseTtl(FailType type, long ttlMillis){
+		if(ttlMillis < 0){
+			throw new IllegalArgumentException("ttlMillis < 0");
+		}
+		baseTtls.put(type, ttlMillis);
+	}
+
+	/**
+	 * @param uri
+	 * @return Чڵʧͣûм¼ѹʱnull
+	 */
+	public synchronized FailType get(String uri){
+		Failure failure = failures.get(uri);
+		if(null == failure || SystemClock.uptimeMillis() >= failure.expireTime){
+			//ڵļ¼ʧܴٴʧʱЧڼӱ
+			return null;
+		}
+		return failure.type;
+	}
+
+	/**
+	 * ¼һʧܣͬһuriʧʱЧڼӱ
+	 * @param uri
+	 * @param type
+	 */
+	public synchronized void put(String uri, FailType type){
+		long baseTtl = baseTtls.get(type);
+		if(baseTtl <= 0){
+			return;
+		}
+		Failure failure = failures.remove(uri);
+		if(null == failure){
+			failure = new Failure();
+		}
+		long ttl = Math.min(baseTtl << Math.min(failure.count, 30), MAX_TTL_MILLIS);
+		failure.count++;
+		failure.type = type;
+		failure.expireTime = SystemClock.uptimeMillis() + ttl;
+		failures.put(uri, failure);
+	}
+
+	/**
+	 * سɹƳuriļ¼ʧܴ
+	 * @param uri
+	 */
+	public synchronized void remove(String uri){
+		failures.remove(uri);
+	}
+
+	public synchronized void clear(){
+		failures.clear();
+	}
+
+	public synchronized int size(){
+		return failures.size();
+	}
+
+	/** һuriʧܼ¼*/
+	private static final class Failure {
+		FailType type;
+		/** ʧܴ*/
+		int count;
+		/** Чڽֹʱ䣬{@link SystemClock#uptimeMillis()}*/
+		long expireTime;
+	}
+}
@@ -1,29 +1,77 @@
 package com.zs.imagemanager;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 
 /**
  * ļ
  * @author zhangshuo
  */
 public class FileNameGenerator {
-	
-	private static final String URI_AND_SIZE_SEPARATOR = "_";
-	private static final String WIDTH_AND_HEIGHT_SEPARATOR = "x";
-	
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/** MessageDigest̰߳ȫģÿ̸߳һʵÿβҶ*/
+	private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
 	/**
-	 * imageUrihashCodeֵ
+	 * imageUriMD5ֵ32λСдʮƣ128λժҪڻģڲuriӦͬһļ
 	 * @param imageUri
 	 * @return
 	 */
 	public String generate(String imageUri) {
-		return String.valueOf(imageUri.hashCode());
+		byte[] digest;
+		try {
+			//digest()ɺãֱӸ
+			digest = MD5.get().digest(imageUri.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		char[] chars = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * ǷΪɰ汾ʹõļimageUrihashCodeֵͬuriͬhashCodeļ޷ȷĸuri
+	 * {@link LruDiskCache}ʱֱɾļ¼д{@link #generate(String)}ɵļȫΪֵ࣬
+	 * Ӧд÷false
+	 * @param name
+	 * @return
+	 */
+	public boolean isLegacyName(String name) {
+		int start = name.startsWith("-") ? 1 : 0;
+		if(name.length() == start || name.length() > start + 10){
+			return false;
+		}
+		for (int i = start; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if(c < '0' || c > '9'){
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	/**
 	 * Generates key for memory cache for incoming image (URI + size).<br />
-	 * Pattern for cache key - <b>[imageUri]_[width]x[height]</b>.
+	 * String form of cache key - <b>[imageUri]_[width]x[height]</b>.
 	 */
-	public static String generateMemoryCacheKey(String imageUri, int[] targetSize) {
-		return new StringBuilder(imageUri).append(URI_AND_SIZE_SEPARATOR).append(targetSize[0]).append(WIDTH_AND_HEIGHT_SEPARATOR).append(targetSize[1]).toString();
+	public static MemoryCacheKey generateMemoryCacheKey(String imageUri, int[] targetSize) {
+		return MemoryCacheKey.obtain(imageUri, targetSize[0], targetSize[1]);
 	}
 }
@@ -0,0 +1,99 @@
+package com.zs.imagemanager;
+
+/**
+ * ƵʹCount-Min Sketchÿ4λ15
+ * <p/>
+ * ÿԪ4ϼȡСֵΪƵʣۼƼ¼ĴﵽСм룬
+ * ʹȥȵ𽥡ϻ
+ * <p/>
+ * ಻̰߳ȫģֻLruMemoryCacheevictionLockʹ
+ * <p/>
+ * עʵֲοGitHubԴĿCaffeineеFrequencySketch
+ * @author zhangshuo
+ */
+final class FrequencySketch {
+
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	
+	/** ÿlong164λ*/
+	private final long[] table;
+	private final int tableMask;
+	/** ¼ﵽֵʱ*/
+	private final int sampleSize;
+	private int size;
+	
+	/**
+	 * @param expectedEntries ԤƻбԪظ
+	 */
+	FrequencySketch(int expectedEntries){
+		int maximum = Math.min(Math.max(expectedEntries, 16), 1 << 24);
+		table = new long[ceilingPowerOfTwo(maximum)];
+		tableMask = table.length - 1;
+		sampleSize = 10 * maximum;
+	}
+	
+	/** @return ԪصĹƷƵʣ0~15*/
+	int frequency(Object e){
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+	
+	/** ¼һη*/
+	void increment(Object e){
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			added |= incrementAt(index, start + i);
+		}
+		if(added && ++size == sampleSize){
+			reset();
+		}
+	}
+	
+	private boolean incrementAt(int i, int j){
+		int offset = j << 2;
+		long mask = (0xfL << offset);
+		if((table[i] & mask) != mask){
+			table[i] += (1L << offset);
+			return true;
+		}
+		return false;
+	}
+	
+	/** м*/
+	private void reset(){
+		int count = 0;
+		for (int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+	
+	private int indexOf(int item, int i){
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += (hash >>> 32);
+		return ((int) hash) & tableMask;
+	}
+	
+	private static int spread(int x){
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+	
+	private static int ceilingPowerOfTwo(int x){
+		return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+	}
+}
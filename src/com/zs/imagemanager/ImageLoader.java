@@ -1,8 +1,13 @@
 package com.zs.imagemanager;
 
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
@@ -11,6 +16,7 @@ import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
 
+import com.zs.imagemanager.decoder.DecodeBudget;
 import com.zs.imagemanager.decoder.ImageDecoder;
 import com.zs.imagemanager.downloader.ImageDownloader;
 
@@ -34,10 +40,21 @@ public class ImageLoader {
 	
 	private ImageDownloader downloader;
 	private LruMemoryCache memoryCache;
+	private LruBitmapPool bitmapPool;
+	private EncodedMemoryCache encodedCache;
+	private MemoryTrimmer memoryTrimmer;
+	/** 洢ռ䲻ʱ֪ͨSDCard棬destroyʱע*/
+	private BroadcastReceiver storageLowReceiver;
 	private LruDiskCache diskCache;
+	private FailureCache failureCache;
 	private ImageDecoder decoder;
 	
 	private Context context;
+
+	/** 浽SDCardͼƬ0Ϊ*/
+	private volatile int maxImageWidthForDiskCache;
+	/** 浽SDCardͼƬߣ0Ϊ*/
+	private volatile int maxImageHeightForDiskCache;
 	
 	/** ¼Ļ*/
 	public static int DISPLAY_WIDTH;
@@ -65,10 +82,30 @@ public class ImageLoader {
 		DISPLAY_WIDTH = this.context.getResources().getDisplayMetrics().widthPixels;
 		DISPLAY_HEIGHT = this.context.getResources().getDisplayMetrics().heightPixels;
 		downloader = DefaultConfigurationFactory.createImageDownloader(context);
-		diskCache = DefaultConfigurationFactory.createDiskCache(context, 10240000);
+		//ÿռ
+		diskCache = DefaultConfigurationFactory.createDiskCache(context, 0);
 		memoryCache = DefaultConfigurationFactory.createMemoryCache(context, 0);
-		decoder = DefaultConfigurationFactory.createImageDecoder();
-		engine = new ImageLoaderEngine(diskCache);
+		bitmapPool = DefaultConfigurationFactory.createBitmapPool(0);
+		encodedCache = DefaultConfigurationFactory.createEncodedMemoryCache(0);
+		failureCache = DefaultConfigurationFactory.createFailureCache();
+		DecodeBudget decodeBudget = DefaultConfigurationFactory.createDecodeBudget(0);
+		decoder = DefaultConfigurationFactory.createImageDecoder(bitmapPool, decodeBudget);
+		//ڴʱ͸ޣOOM
+		memoryTrimmer = new MemoryTrimmer(memoryCache, bitmapPool, encodedCache, decodeBudget);
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+			context.getApplicationContext().registerComponentCallbacks(memoryTrimmer);
+		}
+		//洢ռ䲻ʱ¼SDCardעʱĻ棬destroy֮յ֪ͨÿյֶ
+		final LruDiskCache lowStorageCache = diskCache;
+		storageLowReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				lowStorageCache.onLowStorage();
+			}
+		};
+		context.getApplicationContext().registerReceiver(storageLowReceiver, new IntentFilter(Intent.ACTION_DEVICE_STORAGE_LOW));
+		//ڴ滺涪bitmapʾ浽ԴУٱʱ븴óعʱ
+		engine = new ImageLoaderEngine(memoryCache, bitmapPool, encodedCache, diskCache);
 	}
 
 	public Drawable getImageOnLoading(){
@@ -114,27 +151,46 @@ public class ImageLoader {
 			engine.cancelDisplayTaskFor(imageAware);
 			listener.onLoadingStarted(uri, imageAware.getWrappedView());
 			imageAware.setImageDrawable(getImageOnEmptyUri());
+			engine.markDisplayed(imageAware, null);
 			listener.onLoadingComplete(uri, imageAware.getWrappedView(), null);
 			return;
 		}
 
-		String memoryCacheKey = uri;//ĬϲѹͼƬʱmemoryCacheKeyֵΪuri
-		if(imageAware.isShouldCompress()){//ǷѹͼƬѹͼƬmemoryCacheKeyֵΪuri_width X heigth;
+		MemoryCacheKey memoryCacheKey;
+		if(imageAware.isShouldCompress()){//ǷѹͼƬѹͼƬmemoryCacheKeyĿ;
 			int[] targetSize = defineTagetSize(imageAware);
 			memoryCacheKey = FileNameGenerator.generateMemoryCacheKey(uri, targetSize);
+		}else{//ĬϲѹͼƬʱmemoryCacheKeyֻuri
+			memoryCacheKey = MemoryCacheKey.obtain(uri, 0, 0);
 		}
 		
 		engine.prepareDisplayTaskFor(imageAware, memoryCacheKey);
+		if (memoryTrimmer.claimRestore()) {
+			//ָҪȡڴ滺̭UI̵߳ȴ
+			final MemoryTrimmer trimmer = memoryTrimmer;
+			engine.fireCallback(new Runnable() {
+				@Override
+				public void run() {
+					trimmer.restoreIfRelieved();
+				}
+			});
+		}
 
 		listener.onLoadingStarted(uri, imageAware.getWrappedView());
 
-		Bitmap bmp = memoryCache.get(memoryCacheKey);
-		if (bmp != null && !bmp.isRecycled()) {
+		BitmapResource resource = engine.acquireActiveResource(memoryCacheKey);
+		if (resource == null) {
+			resource = memoryCache.acquire(memoryCacheKey);
+		}
+		if (resource != null) {
+			Bitmap bmp = resource.getBitmap();
 			Log.d(TAG, LOG_LOAD_IMAGE_FROM_MEMORY_CACHE + "-->" + memoryCacheKey);
 			imageAware.setImageBitmap(bmp);
+			engine.markDisplayed(imageAware, resource);
 			listener.onLoadingComplete(uri, imageAware.getWrappedView(), bmp);
 		} else {
 			imageAware.setImageDrawable(getImageOnLoading());
+			engine.markDisplayed(imageAware, null);
 
 			LoadAndDisplayImageTask displayTask = new LoadAndDisplayImageTask(
 					uri, memoryCacheKey, imageAware, 
@@ -143,10 +199,11 @@ public class ImageLoader {
 					downloader,
 					decoder,
 					memoryCache,
+					encodedCache,
 					diskCache,
+					failureCache,
 					listener,
 					progressListener,
-					engine.getLockForUri(uri),
 					defineHandler());
 			engine.submit(displayTask);
 		}
@@ -200,6 +257,71 @@ public class ImageLoader {
 	 */
 	public void clearMemoryCache() {
 		memoryCache.clear();
+		bitmapPool.clear();
+		encodedCache.clear();
+	}
+
+	/**
+	 * Returns pool of bitmaps which are reused for decoding
+	 */
+	public LruBitmapPool getBitmapPool() {
+		return bitmapPool;
+	}
+
+	/**
+	 * Returns in-memory cache of encoded (compressed) image bytes which sits between memory cache and disk cache
+	 */
+	public EncodedMemoryCache getEncodedMemoryCache() {
+		return encodedCache;
+	}
+
+	/**
+	 * Returns memory pressure handler which trims all memory caches
+	 */
+	public MemoryTrimmer getMemoryTrimmer() {
+		return memoryTrimmer;
+	}
+
+	/**
+	 * Trims memory caches in proportion to <b>level</b>. Called automatically on API 14+, on older versions call it
+	 * from {@link android.app.Activity#onLowMemory()} with {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE}.
+	 *
+	 * @param level one of ComponentCallbacks2.TRIM_MEMORY_* levels
+	 */
+	public void trimMemory(int level) {
+		memoryTrimmer.onTrimMemory(level);
+	}
+
+	/**
+	 * ñ浽SDCardͼƬߣصͼƬóߴʱСformatquality±벢滻ԭͼ
+	 * ֮SDCardʱֻСļ
+	 * @param maxWidth 0Ϊ
+	 * @param maxHeight ߣ0Ϊƣ߶Ϊ0ʱԭͼ
+	 * @param format СͼƬıʽƬʹJPEG
+	 * @param quality 0~100PNGʽԴ˲
+	 */
+	public void setMaxImageSizeForDiskCache(int maxWidth, int maxHeight, Bitmap.CompressFormat format, int quality) {
+		if (maxWidth < 0 || maxHeight < 0) {
+			throw new IllegalArgumentException("maxWidth and maxHeight must not be negative");
+		}
+		diskCache.setCompressFormat(format, quality);
+		maxImageWidthForDiskCache = maxWidth;
+		maxImageHeightForDiskCache = maxHeight;
+	}
+
+	int getMaxImageWidthForDiskCache() {
+		return maxImageWidthForDiskCache;
+	}
+
+	int getMaxImageHeightForDiskCache() {
+		return maxImageHeightForDiskCache;
+	}
+
+	/**
+	 * Returns cache of recently failed URIs which are not fetched again until their TTL expires
+	 */
+	public FailureCache getFailureCache() {
+		return failureCache;
 	}
 
 	/**
@@ -305,6 +427,7 @@ public class ImageLoader {
 	 */
 	public void stop() {
 		engine.stop();
+		diskCache.flush();
 	}
 
 	/**
@@ -314,9 +437,22 @@ public class ImageLoader {
 	 */
 	public void destroy() {
 		stop();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+			context.getApplicationContext().unregisterComponentCallbacks(memoryTrimmer);
+		}
+		if (storageLowReceiver != null) {
+			context.getApplicationContext().unregisterReceiver(storageLowReceiver);
+			storageLowReceiver = null;
+		}
+		memoryTrimmer = null;
+		if (diskCache != null) {
+			diskCache.close();
+		}
 		downloader = null;
 		decoder = null;
 		memoryCache = null;
+		bitmapPool = null;
+		encodedCache = null;
 		diskCache = null;
 		engine = null;
 		instance = null;
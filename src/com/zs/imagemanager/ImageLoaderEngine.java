@@ -1,15 +1,18 @@
 package com.zs.imagemanager;
 
-import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
+import android.graphics.Bitmap;
 import android.view.View;
 
 public class ImageLoaderEngine {
@@ -18,17 +21,61 @@ public class ImageLoaderEngine {
 	public static final int DEFAULT_THREAD_POOL_SIZE = 3;
 	/** {@value} */
 	public static final int DEFAULT_THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
-
+	/** ÿ¼ٴʾһѱGCյViewе*/
+	private static final int SWEEP_COLLECTED_VIEWS_INTERVAL = 64;
 	
 	private Executor taskExecutor;
 	private Executor taskExecutorForCachedImages;
 	private Executor taskDistributor;
 	
+	private LruMemoryCache memoryCache;
+	private LruBitmapPool bitmapPool;
+	private EncodedMemoryCache encodedCache;
 	private LruDiskCache diskCache;
 
-	private final Map<Integer, String> cacheKeysForImageAwares = Collections
-			.synchronizedMap(new HashMap<Integer, String>());
-	private final Map<String, ReentrantLock> uriLocks = new WeakHashMap<String, ReentrantLock>();
+	private final Map<Integer, MemoryCacheKey> cacheKeysForImageAwares = Collections
+			.synchronizedMap(new HashMap<Integer, MemoryCacheKey>());
+	/** ¼ÿImageViewAwareǰʾԴÿ¼иԴһãʾbitmap˲ᱻ*/
+	private final Map<Integer, DisplayedResource> displayedResourcesForImageAwares = Collections
+			.synchronizedMap(new HashMap<Integer, DisplayedResource>());
+	/** ϴѱյView¼ʾĴdisplayedResourcesForImageAwares޸*/
+	private int displayCountSinceSweep;
+	/** ѱڴ滺̭ʾbitmap*/
+	private final ActiveResources activeResources = new ActiveResources();
+
+	/** ڴ滺涪ԴʱãʾҪʾ򱣴浽Դ*/
+	private final LruMemoryCache.EvictionListener evictionListener = new LruMemoryCache.EvictionListener() {
+		@Override
+		public void onEvicted(MemoryCacheKey key, BitmapResource value) {
+			if (value.getRefCount() > 1) {
+				activeResources.activate(key, value);
+			}
+		}
+	};
+
+	/**
+	 * ԴΪ0ʱǱڴ滺̭ʾĻԴƻڴ滺棻
+	 * 븴óأóزʱrecycle
+	 */
+	private final BitmapResource.ResourceReleaser resourceReleaser = new BitmapResource.ResourceReleaser() {
+		@Override
+		public void onResourceReleased(BitmapResource resource) {
+			MemoryCacheKey key = activeResources.deactivate(resource);
+			if (key != null && !memoryCache.containsKey(key) && memoryCache.put(key, resource)) {
+				return;
+			}
+			//ڼ䱻߳acquireʱͷ̴߳
+			if (!resource.markReleased()) {
+				return;
+			}
+			Bitmap bitmap = resource.getBitmap();
+			if (!bitmapPool.put(bitmap)) {
+				bitmap.recycle();
+			}
+		}
+	};
+	/** ڼصuriȴ񣬼ؽʱƳ*/
+	private final InFlightLoads inFlightLoads = new InFlightLoads();
 
 	private final AtomicBoolean paused = new AtomicBoolean(false);
 	private final AtomicBoolean networkDenied = new AtomicBoolean(false);
@@ -36,8 +83,13 @@ public class ImageLoaderEngine {
 
 	private final Object pauseLock = new Object();
 
-	ImageLoaderEngine(LruDiskCache diskCache) {
+	ImageLoaderEngine(LruMemoryCache memoryCache, LruBitmapPool bitmapPool, EncodedMemoryCache encodedCache,
+			LruDiskCache diskCache) {
+		this.memoryCache = memoryCache;
+		this.bitmapPool = bitmapPool;
+		this.encodedCache = encodedCache;
 		this.diskCache = diskCache;
+		memoryCache.setEvictionListener(evictionListener);
 		taskExecutor = createTaskExecutor();
 		taskExecutorForCachedImages = createTaskExecutor();
 		taskDistributor = DefaultConfigurationFactory.createTaskDistributor();
@@ -48,8 +100,9 @@ public class ImageLoaderEngine {
 		taskDistributor.execute(new Runnable() {
 			@Override
 			public void run() {
-				File image = diskCache.get(task.getLoadingUri());
-				boolean isImageCachedOnDisk = image != null && image.exists();
+				//¡жϣһδʱҪȴSDCard
+				boolean isImageCachedOnDisk = encodedCache.containsKey(task.getLoadingUri())
+						|| diskCache.mightContain(task.getLoadingUri());
 				initExecutorsIfNeed();
 				if (isImageCachedOnDisk) {
 					taskExecutorForCachedImages.execute(task);
@@ -78,6 +131,14 @@ public class ImageLoaderEngine {
 	 * Returns URI of image which is loading at this moment into passed {@link com.nostra13.universalimageloader.core.imageaware.ImageAware}
 	 */
 	String getLoadingUriForView(ImageViewAware imageAware) {
+		MemoryCacheKey memoryCacheKey = cacheKeysForImageAwares.get(imageAware.getId());
+		return memoryCacheKey == null ? null : memoryCacheKey.getUri();
+	}
+
+	/**
+	 * Returns memory cache key of image which is loading at this moment into passed <b>imageAware</b>
+	 */
+	MemoryCacheKey getLoadingKeyForView(ImageViewAware imageAware) {
 		return cacheKeysForImageAwares.get(imageAware.getId());
 	}
 
@@ -85,7 +146,7 @@ public class ImageLoaderEngine {
 	 * Associates <b>memoryCacheKey</b> with <b>imageAware</b>. Then it helps to define image URI is loaded into View at
 	 * exact moment.
 	 */
-	void prepareDisplayTaskFor(ImageViewAware imageAware, String memoryCacheKey) {
+	void prepareDisplayTaskFor(ImageViewAware imageAware, MemoryCacheKey memoryCacheKey) {
 		cacheKeysForImageAwares.put(imageAware.getId(), memoryCacheKey);
 	}
 
@@ -99,6 +160,69 @@ public class ImageLoaderEngine {
 		cacheKeysForImageAwares.remove(imageAware.getId());
 	}
 
+	/**
+	 * װõbitmap߳зԴһ
+	 * @param loadTimeMillis õbitmapѵʱ
+	 */
+	BitmapResource newResource(Bitmap bitmap, long loadTimeMillis) {
+		return new BitmapResource(bitmap, resourceReleaser, loadTimeMillis);
+	}
+
+	/**
+	 * ¼<b>imageAware</b>ǰʾԴͷ֮ǰʾԴ
+	 * @param imageAware
+	 * @param resource ߳еһתimageAwareΪnullʾimageAwareʾκbitmapʾռλͼ򱻸ã
+	 */
+	void markDisplayed(ImageViewAware imageAware, BitmapResource resource) {
+		DisplayedResource previous;
+		List<DisplayedResource> collected = null;
+		synchronized (displayedResourcesForImageAwares) {
+			if (resource == null) {
+				previous = displayedResourcesForImageAwares.remove(imageAware.getId());
+			} else {
+				previous = displayedResourcesForImageAwares.put(imageAware.getId(),
+						new DisplayedResource(imageAware.getWrappedView(), resource));
+			}
+			if (++displayCountSinceSweep >= SWEEP_COLLECTED_VIEWS_INTERVAL) {
+				displayCountSinceSweep = 0;
+				collected = removeCollectedViews();
+			}
+		}
+		//ͷţΪ0ʱڴ滺漰ó
+		if (previous != null) {
+			previous.resource.release();
+		}
+		if (collected != null) {
+			for (DisplayedResource displayed : collected) {
+				displayed.resource.release();
+			}
+		}
+	}
+
+	/** ƳViewѱGCյļ¼displayedResourcesForImageAwaresµ*/
+	private List<DisplayedResource> removeCollectedViews() {
+		List<DisplayedResource> collected = null;
+		Iterator<DisplayedResource> it = displayedResourcesForImageAwares.values().iterator();
+		while (it.hasNext()) {
+			DisplayedResource displayed = it.next();
+			if (displayed.viewRef.get() == null) {
+				it.remove();
+				if (collected == null) {
+					collected = new ArrayList<DisplayedResource>();
+				}
+				collected.add(displayed);
+			}
+		}
+		return collected;
+	}
+
+	/**
+	 * @return ѱڴ滺̭ʾԴΪһãûʱnullӦڲѯڴ滺֮ǰ
+	 */
+	BitmapResource acquireActiveResource(MemoryCacheKey memoryCacheKey) {
+		return activeResources.acquire(memoryCacheKey);
+	}
+
 	/**
 	 * Denies or allows engine to download images from the network.<br /> <br /> If downloads are denied and if image
 	 * isn't cached then {@link ImageLoadingListener#onLoadingFailed(String, View, FailReason)} callback will be fired
@@ -150,20 +274,72 @@ public class ImageLoaderEngine {
 		((ExecutorService) taskExecutorForCachedImages).shutdownNow();
 
 		cacheKeysForImageAwares.clear();
-		uriLocks.clear();
+		//ViewʾЩbitmapֻ¼ͷã䱻ãbitmap֮GC
+		displayedResourcesForImageAwares.clear();
+		activeResources.clear();
+		inFlightLoads.clear();
 	}
 
 	void fireCallback(Runnable r) {
 		taskDistributor.execute(r);
 	}
 
-	ReentrantLock getLockForUri(String uri) {
-		ReentrantLock lock = uriLocks.get(uri);
-		if (lock == null) {
-			lock = new ReentrantLock();
-			uriLocks.put(uri, lock);
+	/**
+	 * ʼtaskuriûڼظuriʱtaskΪߣtaskǼΪȴߺأռ̣߳
+	 * ؽʱ{@link #finishLoading(LoadAndDisplayImageTask, BitmapResource)}ַ
+	 * @return true taskӦִмأfalse ѵǼΪȴ
+	 */
+	boolean startLoading(LoadAndDisplayImageTask task) {
+		return inFlightLoads.start(task);
+	}
+
+	/**
+	 * ߽أɹʧܻȡĿkeyؽͬĵȴֱʾȴߣͬߴ磬δɹύ
+	 * ʱͨڱݻSDCardУʧܵuriʧܻʧܣȡʱһΪµļ
+	 * @param task 
+	 * @param resource ؽ߳һãʧܻȡʱΪnull
+	 */
+	void finishLoading(LoadAndDisplayImageTask task, BitmapResource resource) {
+		List<LoadAndDisplayImageTask> waiters = inFlightLoads.finish(task);
+		if (waiters == null) {
+			return;
+		}
+		for (LoadAndDisplayImageTask waiter : waiters) {
+			if (resource != null && waiter.getMemoryCacheKey().equals(task.getMemoryCacheKey()) && resource.acquire()) {
+				waiter.display(resource);
+			} else {
+				submit(waiter);
+			}
+		}
+	}
+
+	/**
+	 * ̳֤߳taskʾĹSDCardݣռüػͼƬ̣֮߳ļء
+	 * ֤ΪuriһμصǼ{@link InFlightLoads}Уͬһuriͬʱд뻺棻ͬһuriڼػ֤ʱԣ
+	 * ֤ڼļصǼΪȴߣύӸºĻȡ
+	 * @param task ʾݵ
+	 * @param cached ݵHTTPϢ
+	 */
+	void revalidate(final LoadAndDisplayImageTask task, final CacheMetadata cached) {
+		if (!inFlightLoads.tryStart(task)) {
+			return;
 		}
-		return lock;
+		taskDistributor.execute(new Runnable() {
+			@Override
+			public void run() {
+				initExecutorsIfNeed();
+				taskExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.revalidate(cached);
+						} finally {
+							finishLoading(task, null);
+						}
+					}
+				});
+			}
+		});
 	}
 
 	AtomicBoolean getPause() {
@@ -181,4 +357,15 @@ public class ImageLoaderEngine {
 	boolean isSlowNetwork() {
 		return slowNetwork.get();
 	}
+
+	/** ʾеԴֻViewViewպ{@link #removeCollectedViews()}ͷԴ*/
+	private static final class DisplayedResource {
+		final Reference<View> viewRef;
+		final BitmapResource resource;
+
+		DisplayedResource(View view, BitmapResource resource) {
+			this.viewRef = new WeakReference<View>(view);
+			this.resource = resource;
+		}
+	}
 }
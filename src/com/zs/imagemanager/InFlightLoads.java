@@ -0,0 +1,125 @@
+package com.zs.imagemanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ڽеļصĵǼǱuriϲͬʱļ
+ * <p/>
+ * ÿڼصuriӦһ¼ɵһ񣨼ߣ¼߼ȴ
+ * ߽ʱ¼ͬȴһȡƳ¼ߵһμȫһ£GC
+ * <p/>
+ * ͬuri֮ûйǼͨConcurrentHashMapputIfAbsentɣͬһuriĵȴڸ¼¼룬
+ * ߵĽ⣬ѽļ¼ټȴߡ
+ * ¼{@value #MAX_IN_FLIGHT}ʱٺϲµԼأǼǱĴСʼн硣
+ * @author zhangshuo
+ */
+final class InFlightLoads {
+
+	/** ͬʱǼǵuri*/
+	static final int MAX_IN_FLIGHT = 10000;
+
+	private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+	/**
+	 * ǼtaskļأûڼظuriʱtaskΪߣtaskȴ
+	 * @param task
+	 * @return true taskӦִмأʱ{@link #finish(LoadAndDisplayImageTask)}false Ѽȴ
+	 */
+	boolean start(LoadAndDisplayImageTask task) {
+		String uri = task.getLoadingUri();
+		while (true) {
+			Flight flight = flights.get(uri);
+			if (flight == null) {
+				if (flights.size() >= MAX_IN_FLIGHT) {
+					// ǼǣأfinishʱҲԼļ¼ֱӷ
+					return true;
+				}
+				if (flights.putIfAbsent(uri, new Flight(task)) == null) {
+					return true;
+				}
+				continue;
+			}
+			synchronized (flight) {
+				if (!flight.finished) {
+					flight.waiters.add(task);
+					return false;
+				}
+			}
+			// ѽûƳ¼Ƴ
+			flights.remove(uri, flight);
+		}
+	}
+
+	/**
+	 * ֻûظuriʱtaskǼΪߣȴߣʾ֤ͬһuriļػ
+	 * @param task
+	 * @return true ѵǼΪߣʱ{@link #finish(LoadAndDisplayImageTask)}
+	 *         false uriڼأ߼¼Ѵ޷Ǽ
+	 */
+	boolean tryStart(LoadAndDisplayImageTask task) {
+		String uri = task.getLoadingUri();
+		while (true) {
+			Flight flight = flights.get(uri);
+			if (flight == null) {
+				if (flights.size() >= MAX_IN_FLIGHT) {
+					return false;
+				}
+				if (flights.putIfAbsent(uri, new Flight(task)) == null) {
+					return true;
+				}
+				continue;
+			}
+			synchronized (flight) {
+				if (!flight.finished) {
+					return false;
+				}
+			}
+			flights.remove(uri, flight);
+		}
+	}
+
+	/**
+	 * ߽أƳ¼
+	 * @param task 
+	 * @return ȴôμؽtaskǵǼǵļʱnull
+	 */
+	List<LoadAndDisplayImageTask> finish(LoadAndDisplayImageTask task) {
+		String uri = task.getLoadingUri();
+		Flight flight = flights.get(uri);
+		if (flight == null || flight.leader != task) {
+			return null;
+		}
+		List<LoadAndDisplayImageTask> waiters;
+		synchronized (flight) {
+			flight.finished = true;
+			waiters = flight.waiters;
+		}
+		flights.remove(uri, flight);
+		return waiters;
+	}
+
+	/**
+	 * Ƴм¼֮ڽеļؽʱҲԼļ¼ȴ߲ٱַ
+	 */
+	void clear() {
+		flights.clear();
+	}
+
+	int size() {
+		return flights.size();
+	}
+
+	/** һuriһμ*/
+	private static final class Flight {
+		final LoadAndDisplayImageTask leader;
+		/** Flight·ʣfinished֮޸*/
+		final List<LoadAndDisplayImageTask> waiters = new ArrayList<LoadAndDisplayImageTask>(2);
+		boolean finished;
+
+		Flight(LoadAndDisplayImageTask leader) {
+			this.leader = leader;
+		}
+	}
+}
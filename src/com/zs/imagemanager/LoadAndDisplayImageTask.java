@@ -3,15 +3,17 @@ package com.zs.imagemanager;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
 import android.graphics.Bitmap;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.zs.imagemanager.FailReason.FailType;
 import com.zs.imagemanager.decoder.ImageDecoder;
+import com.zs.imagemanager.downloader.ConditionalRequest;
 import com.zs.imagemanager.downloader.ImageDownloader;
 import com.zs.imagemanager.downloader.ImageDownloader.Scheme;
 
@@ -23,10 +25,14 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 	private static final String LOG_RESUME_AFTER_PAUSE = ".. Resume loading [%s]";
 	private static final String LOG_DELAY_BEFORE_LOADING = "Delay %d ms before loading...  [%s]";
 	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s]";
-	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Waiting... [%s]";
+	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Attach to it and release thread [%s]";
 	private static final String LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING = "...Get cached bitmap from memory after waiting. [%s]";
+	private static final String LOG_GET_IMAGE_FROM_LARGER_VARIANT = "Get image from larger cached variant in memory [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_NETWORK = "Load image from network [%s]";
+	private static final String LOG_FAIL_FAST = "Image failed recently, skip network [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_DISK_CACHE = "Load image from disk cache [%s]";
+	private static final String LOG_REVALIDATE_DISK_CACHE = "Cached image on disk is stale, revalidate [%s]";
+	private static final String LOG_LOAD_IMAGE_FROM_ENCODED_CACHE = "Load image from encoded memory cache [%s]";
 	private static final String LOG_RESIZE_CACHED_IMAGE_FILE = "Resize image in disk cache [%s]";
 	private static final String LOG_PREPROCESS_IMAGE = "PreProcess image before caching in memory [%s]";
 	private static final String LOG_POSTPROCESS_IMAGE = "PostProcess image before displaying [%s]";
@@ -49,24 +55,36 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 	private final ImageDownloader downloader;
 	private final ImageDecoder decoder;
 	final String uri;
-	private final String memoryCacheKey;
+	private final MemoryCacheKey memoryCacheKey;
 	final ImageViewAware imageAware;
 	final ImageLoadingListener listener;
 	final ImageLoadingProgressListener progressListener;
-	private ReentrantLock loadFromUriLock;
+	/** whether decoding was already retried after caches were trimmed on OutOfMemoryError */
+	private boolean retriedAfterOutOfMemory;
+	/** ʱͬʱڴеıݣݹʹúΪnull*/
+	private ByteBuffer downloadedData;
+	/** ϴʱǷ񷵻304*/
+	private boolean notModified;
+	/** ӱݻSDCardѹʱΪHTTPϢʾ֤*/
+	private CacheMetadata staleMetadata;
+	/** Ƿʾ֤ʱ֪ͨȣViewҲж*/
+	private boolean revalidating;
 	private LruMemoryCache memoryCache;
+	private EncodedMemoryCache encodedCache;
 	private LruDiskCache diskCache;
+	private FailureCache failureCache;
 
-	public LoadAndDisplayImageTask(String uri, String memoryCacheKey, ImageViewAware imageAware, 
+	public LoadAndDisplayImageTask(String uri, MemoryCacheKey memoryCacheKey, ImageViewAware imageAware, 
 			ImageLoader loader,
 			ImageLoaderEngine engine, 
 			ImageDownloader downloader,
 			ImageDecoder decoder,
 			LruMemoryCache memoryCache,
+			EncodedMemoryCache encodedCache,
 			LruDiskCache diskCache,
+			FailureCache failureCache,
 			ImageLoadingListener listener,
 			ImageLoadingProgressListener progressListener,
-			ReentrantLock loadFromUriLock,
 			Handler handler) {
 		this.loader = loader;
 		this.engine = engine;
@@ -78,10 +96,11 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 		this.memoryCacheKey = memoryCacheKey;
 		this.imageAware = imageAware;
 		this.memoryCache = memoryCache;
+		this.encodedCache = encodedCache;
 		this.diskCache = diskCache;
+		this.failureCache = failureCache;
 		this.listener = listener;
 		this.progressListener = progressListener;
-		this.loadFromUriLock = loadFromUriLock;
 	}
 
 	@Override
@@ -89,25 +108,38 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 		if (waitIfPaused()) return;
 
 		Log.d(TAG, LOG_START_DISPLAY_IMAGE_TASK +"-->"+ memoryCacheKey);
-		if (loadFromUriLock.isLocked()) {
+		//ͬһuriڼʱǼΪȴߺأռ̵߳ȴ
+		if (!engine.startLoading(this)) {
 			Log.d(TAG, LOG_WAITING_FOR_IMAGE_LOADED +"-->"+ memoryCacheKey);
+			return;
 		}
 
-		loadFromUriLock.lock();
-		Bitmap bmp;
+		//еãDisplayBitmapTaskȡʱͷ
+		BitmapResource resource = null;
 		try {
 			checkTaskNotActual();
 
-			bmp = memoryCache.get(memoryCacheKey);
-			if (bmp == null || bmp.isRecycled()) {
-				bmp = tryLoadBitmap();
-				if (bmp == null) return; // listener callback already was fired
+			resource = engine.acquireActiveResource(memoryCacheKey);
+			if (resource == null) {
+				resource = memoryCache.acquire(memoryCacheKey);
+			}
+			if (resource == null) {
+				resource = memoryCache.getFromLargerVariant(memoryCacheKey);
+				if (resource != null) {
+					// derived bitmap is already cached (or is owned by larger variant)
+					Log.d(TAG, LOG_GET_IMAGE_FROM_LARGER_VARIANT + "-->" + memoryCacheKey);
+				} else {
+					long loadStartTime = SystemClock.uptimeMillis();
+					Bitmap bmp = tryLoadBitmap();
+					if (bmp == null) return; // listener callback already was fired
+					resource = engine.newResource(bmp, SystemClock.uptimeMillis() - loadStartTime);
 
-				checkTaskNotActual();
-				checkTaskInterrupted();
+					checkTaskNotActual();
+					checkTaskInterrupted();
 
-				Log.d(TAG, LOG_CACHE_IMAGE_IN_MEMORY + "-->" + memoryCacheKey);
-				memoryCache.put(memoryCacheKey, bmp);
+					Log.d(TAG, LOG_CACHE_IMAGE_IN_MEMORY + "-->" + memoryCacheKey);
+					memoryCache.put(memoryCacheKey, resource);
+				}
 			} else {
 				Log.d(TAG, LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING + "-->" + memoryCacheKey);
 			}
@@ -115,13 +147,30 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 			checkTaskNotActual();
 			checkTaskInterrupted();
 		} catch (TaskCancelledException e) {
+			if (resource != null) {
+				resource.release();
+				resource = null;
+			}
 			fireCancelEvent();
 			return;
 		} finally {
-			loadFromUriLock.unlock();
+			//ַȴͬһuri񣬴ʱԳresource
+			engine.finishLoading(this, resource);
 		}
 
-		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, uri, memoryCacheKey, imageAware, listener, engine);
+		display(resource);
+		if (staleMetadata != null) {
+			//ڵʾȴ磻̳֤߳
+			engine.revalidate(this, staleMetadata);
+		}
+	}
+
+	/**
+	 * UI߳ʾresourceͬһuriͬһkeyļʱ{@link ImageLoaderEngine}ֱӵ
+	 * @param resource еһãʾʱimageAwareȡʱͷ
+	 */
+	void display(BitmapResource resource) {
+		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(resource, uri, memoryCacheKey, imageAware, listener, engine);
 		runTask(displayBitmapTask, handler, engine);
 	}
 	
@@ -131,14 +180,14 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 		if (pause.get()) {
 			synchronized (engine.getPauseLock()) {
 				if (pause.get()) {
-					Log.d(LOG_WAITING_FOR_RESUME, memoryCacheKey);
+					Log.d(TAG, LOG_WAITING_FOR_RESUME + "-->" + memoryCacheKey);
 					try {
 						engine.getPauseLock().wait();
 					} catch (InterruptedException e) {
-						Log.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
+						Log.e(TAG, LOG_TASK_INTERRUPTED + "-->" + memoryCacheKey);
 						return true;
 					}
-					Log.d(LOG_RESUME_AFTER_PAUSE, memoryCacheKey);
+					Log.d(TAG, LOG_RESUME_AFTER_PAUSE + "-->" + memoryCacheKey);
 				}
 			}
 		}
@@ -148,68 +197,216 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 	private Bitmap tryLoadBitmap() throws TaskCancelledException {
 		Bitmap bitmap = null;
 		try {
-			File imageFile = diskCache.get(uri);
-			if (imageFile != null && imageFile.exists()) {
-				Log.d(TAG, LOG_LOAD_IMAGE_FROM_DISK_CACHE + "-->" + memoryCacheKey);
+			ByteBuffer encoded = encodedCache.get(uri);
+			if (encoded != null) {
+				Log.d(TAG, LOG_LOAD_IMAGE_FROM_ENCODED_CACHE + "-->" + memoryCacheKey);
 				checkTaskNotActual();
-				bitmap = decodeImage(Scheme.FILE.wrap(imageFile.getAbsolutePath()));
+				bitmap = decodeEncodedImage(encoded);
 			}
 			if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+				if (diskCache.contains(uri)) {
+					Log.d(TAG, LOG_LOAD_IMAGE_FROM_DISK_CACHE + "-->" + memoryCacheKey);
+					checkTaskNotActual();
+					bitmap = downloadedData != null ? decodeDownloadedData() : decodeFromDiskCache();
+				}
+			}
+			if (bitmap != null && bitmap.getWidth() > 0 && bitmap.getHeight() > 0) {
+				//ݻеҲSDCard棬ʱͬʾ֤
+				CacheMetadata metadata = diskCache.getMetadata(uri);
+				if (metadata != null && !metadata.isFresh(System.currentTimeMillis())) {
+					staleMetadata = metadata;
+				}
+			}
+			if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+				FailType recentFailure = failureCache.get(uri);
+				if (recentFailure != null) {
+					// failed recently, don't tie up a pool thread with the network again
+					Log.d(TAG, LOG_FAIL_FAST + "-->" + memoryCacheKey);
+					fireFailEvent(recentFailure, null);
+					return null;
+				}
 				Log.d(TAG, LOG_LOAD_IMAGE_FROM_NETWORK + "-->" + memoryCacheKey);
 
-				String imageUriForDecoding = uri;
-				if (tryCacheImageOnDisk()) {
-					imageFile = diskCache.get(uri);
-					if (imageFile != null) {
-						imageUriForDecoding = Scheme.FILE.wrap(imageFile.getAbsolutePath());
-					}
-				}
+				boolean isCachedOnDisk = tryCacheImageOnDisk(null) && diskCache.contains(uri);
 
 				checkTaskNotActual();
-				bitmap = decodeImage(imageUriForDecoding);
+				if (downloadedData != null) {
+					bitmap = decodeDownloadedData();
+				} else {
+					bitmap = isCachedOnDisk ? decodeFromDiskCache() : decodeImage(uri);
+				}
 
 				if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+					recordFailure(FailType.DECODING_ERROR);
 					fireFailEvent(FailType.DECODING_ERROR, null);
+				} else {
+					failureCache.remove(uri);
 				}
 			}
 		} catch (IllegalStateException e) {
+			recordFailure(FailType.NETWORK_DENIED);
 			fireFailEvent(FailType.NETWORK_DENIED, null);
 		} catch (TaskCancelledException e) {
 			throw e;
 		} catch (IOException e) {
 			Log.e(TAG, "tryLoadBitmap", e);
+			recordFailure(FailType.IO_ERROR);
 			fireFailEvent(FailType.IO_ERROR, e);
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "tryLoadBitmap",e);
+			// trimmer is null after ImageLoader was destroyed, nothing can be released then
+			MemoryTrimmer trimmer = loader.getMemoryTrimmer();
+			if (!retriedAfterOutOfMemory && trimmer != null) {
+				// release cached memory and try once more before reporting failure
+				retriedAfterOutOfMemory = true;
+				trimmer.onOutOfMemory();
+				return tryLoadBitmap();
+			}
+			recordFailure(FailType.OUT_OF_MEMORY);
 			fireFailEvent(FailType.OUT_OF_MEMORY, e);
 		} catch (Throwable e) {
 			Log.e(TAG, "tryLoadBitmap",e);
+			recordFailure(FailType.UNKNOWN);
 			fireFailEvent(FailType.UNKNOWN, e);
 		}
 		return bitmap;
 	}
+
+	/**
+	 * ¼ʧܣЧٴμظuriʱٷ磻жʧܲ¼
+	 * <p/>
+	 * ֻȡжϱ־֮{@link #fireFailEvent(FailType, Throwable)}ܿѱж
+	 */
+	private void recordFailure(FailType failType) {
+		if (Thread.currentThread().isInterrupted()) return;
+		failureCache.put(uri, failType);
+	}
 	
 	private Bitmap decodeImage(String imageUri) throws IOException {
 		Log.d(TAG, "memoryCacheKey-->" + memoryCacheKey);
 		Log.d(TAG, "imageUri-->" + imageUri);
 		return decoder.decode(imageUri, imageAware, downloader, null);
 	}
+
+	/**
+	 * ڵSDCardʾ{@link ImageLoaderEngine}̳߳еã֤Ϣ
+	 * 304ֻЧڣ200ʱ滻棬ڴ滺еbitmap䣻
+	 * ʧܹuriʧʱ¼ʧܻ棬֮ʹԭ
+	 * @param cached ݵHTTPϢ
+	 */
+	void revalidate(CacheMetadata cached) {
+		if (failureCache.get(uri) != null) return;
+		Log.d(TAG, LOG_REVALIDATE_DISK_CACHE + "-->" + memoryCacheKey);
+		revalidating = true;
+		boolean loaded;
+		try {
+			loaded = tryCacheImageOnDisk(cached);
+		} catch (TaskCancelledException e) {
+			return;
+		}
+		if (!loaded) {
+			recordFailure(FailType.IO_ERROR);
+			return;
+		}
+		if (!notModified) {
+			//ݻԭʧЧ
+			if (downloadedData != null) {
+				encodedCache.put(uri, downloadedData);
+			} else {
+				encodedCache.remove(uri);
+			}
+		}
+		downloadedData = null;
+	}
+
+	/**
+	 * صݣʱѱڴУҪٶSDCardͬʱݻ
+	 */
+	private Bitmap decodeDownloadedData() throws IOException {
+		ByteBuffer downloaded = downloadedData;
+		downloadedData = null;
+		encodedCache.put(uri, downloaded);
+		return decodeEncodedImage(downloaded.asReadOnlyBuffer());
+	}
+
+	/**
+	 * SDCard룺洢ݰλöݻ棻ļݻ棬ʱֱӴļ
+	 * @return ûʱnull
+	 */
+	private Bitmap decodeFromDiskCache() throws IOException {
+		ByteBuffer packed = diskCache.getPacked(uri);
+		if (packed != null) {
+			encodedCache.put(uri, packed);
+			return decodeEncodedImage(packed.asReadOnlyBuffer());
+		}
+		File imageFile = diskCache.get(uri);
+		if (imageFile != null) {
+			return decodeCachedFile(imageFile);
+		}
+		return null;
+	}
+
+	/**
+	 * SDCardļݻ룻ļʱͨͬһFileDescriptorֱӴļ룬Java
+	 */
+	private Bitmap decodeCachedFile(File imageFile) throws IOException {
+		ByteBuffer encoded = encodedCache.load(uri, imageFile);
+		if (encoded == null) {
+			Log.d(TAG, "memoryCacheKey-->" + memoryCacheKey);
+			return decoder.decode(imageFile, imageAware);
+		}
+		return decodeEncodedImage(encoded);
+	}
+
+	/**
+	 * ӱݽ룬ʧʱӱݻƳ
+	 * @param encoded ֻֻǰ̶߳ȡ
+	 */
+	private Bitmap decodeEncodedImage(ByteBuffer encoded) throws IOException {
+		Bitmap bitmap = decoder.decode(uri, imageAware, newBufferDownloader(encoded), null);
+		if (bitmap == null) {
+			encodedCache.remove(uri);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * @param encoded ֻǰ̶߳ȡ
+	 * @return ÿζͷȡencodedImageDownloader
+	 */
+	private static ImageDownloader newBufferDownloader(final ByteBuffer encoded) {
+		return new ImageDownloader() {
+			@Override
+			public InputStream getStream(String imageUri, Object extra) {
+				encoded.rewind();
+				return new ByteBufferInputStream(encoded);
+			}
+		};
+	}
 	
-	/** @return <b>true</b> - if image was downloaded successfully; <b>false</b> - otherwise */
-	private boolean tryCacheImageOnDisk() throws TaskCancelledException {
+	/**
+	 * @param cached HTTP cache metadata of stale image on disk to revalidate, <b>null</b> - for plain download
+	 * @return <b>true</b> - if image was downloaded successfully or cached image is still valid (304);
+	 *         <b>false</b> - otherwise
+	 */
+	private boolean tryCacheImageOnDisk(CacheMetadata cached) throws TaskCancelledException {
 		Log.d(TAG, LOG_CACHE_IMAGE_ON_DISK + "-->" + memoryCacheKey);
 
 		boolean loaded;
 		try {
-			loaded = downloadImage();
-//			if (loaded) {
-//				int width = configuration.maxImageWidthForDiskCache;
-//				int height = configuration.maxImageHeightForDiskCache;
-//				if (width > 0 || height > 0) {
-//					L.d(LOG_RESIZE_CACHED_IMAGE_FILE, memoryCacheKey);
-//					resizeAndSaveImage(width, height); // TODO : process boolean result
-//				}
-//			}
+			ConditionalRequest request = new ConditionalRequest(cached);
+			loaded = downloadImage(request);
+			if (loaded && !request.isNotModified()) {
+				int width = loader.getMaxImageWidthForDiskCache();
+				int height = loader.getMaxImageHeightForDiskCache();
+				if (width > 0 || height > 0) {
+					Log.d(TAG, LOG_RESIZE_CACHED_IMAGE_FILE + "-->" + memoryCacheKey);
+					if (resizeAndSaveImage(width, height, request.getResponseMetadata())) {
+						// downloaded original is replaced in disk cache
+						downloadedData = null;
+					} // original image stays cached if it isn't resized
+				}
+			}
 		} catch (IOException e) {
 			Log.e(TAG, "tryCacheImageOnDisk", e);
 			loaded = false;
@@ -217,14 +414,58 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 		return loaded;
 	}
 	
-	private boolean downloadImage() throws IOException {
-		InputStream is = downloader.getStream(uri, null);
-		return diskCache.put(uri, is, this);
+	/**
+	 * ձ浽SDCardͼƬСmaxWidth x maxHeightڣ滻ԭͼԭͼóߴʱ
+	 * @param maxWidth 0Ϊ
+	 * @param maxHeight 0Ϊ
+	 * @param metadata ԭͼӦHTTPϢСͼƬ
+	 * @return true 滻ΪСͼƬ
+	 */
+	private boolean resizeAndSaveImage(int maxWidth, int maxHeight, CacheMetadata metadata) throws IOException {
+		int[] maxSize = {maxWidth > 0 ? maxWidth : Integer.MAX_VALUE, maxHeight > 0 ? maxHeight : Integer.MAX_VALUE};
+		Bitmap bmp;
+		ByteBuffer packed = downloadedData != null ? downloadedData.duplicate() : diskCache.getPacked(uri);
+		if (packed != null) {
+			bmp = decoder.decodeDownscaled(uri, maxSize, newBufferDownloader(packed), null);
+		} else {
+			File imageFile = diskCache.get(uri);
+			if (imageFile == null) {
+				return false;
+			}
+			bmp = decoder.decodeDownscaled(Scheme.FILE.wrap(imageFile.getAbsolutePath()), maxSize, downloader, null);
+		}
+		if (bmp == null) {
+			return false;
+		}
+		try {
+			return diskCache.put(uri, bmp, metadata);
+		} finally {
+			bmp.recycle();
+		}
+	}
+
+	/**
+	 * ͼƬͬӦHTTPϢ浽SDCard棻ݻ浥޵ͼƬͬʱ{@link #downloadedData}С
+	 * ֤ʱ304ֻSDCardеЧ
+	 */
+	private boolean downloadImage(ConditionalRequest request) throws IOException {
+		InputStream is = downloader.getStream(uri, request);
+		notModified = request.isNotModified();
+		if (notModified) {
+			IoUtils.closeSilently(is);
+			diskCache.setMetadata(uri, request.getResponseMetadata());
+			downloadedData = null;
+			return true;
+		}
+		TeeInputStream tee = new TeeInputStream(is, encodedCache.maxEntrySize());
+		boolean loaded = diskCache.put(uri, tee, this, request.getResponseMetadata());
+		downloadedData = loaded ? tee.getData() : null;
+		return loaded;
 	}
 	
 	@Override
 	public boolean onBytesCopied(int current, int total) {
-		// TODO Auto-generated method stub
+		if (revalidating) return true;
 		return fireProgressEvent(current, total);
 	}
 
@@ -249,6 +490,7 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 			@Override
 			public void run() {
 				imageAware.setImageDrawable(loader.getImageOnFail());
+				engine.markDisplayed(imageAware, null);
 				listener.onLoadingFailed(uri, imageAware.getWrappedView(), new FailReason(failType, failCause));
 			}
 		};
@@ -309,7 +551,7 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 	
 	/** @return <b>true</b> - if current ImageAware is reused for displaying another image; <b>false</b> - otherwise */
 	private boolean isViewReused() {
-		String currentCacheKey = engine.getLoadingUriForView(imageAware);
+		MemoryCacheKey currentCacheKey = engine.getLoadingKeyForView(imageAware);
 		// Check whether memory cache key (image URI) for current ImageAware is actual.
 		// If ImageAware is reused for another task then current task should be cancelled.
 		boolean imageAwareWasReused = !memoryCacheKey.equals(currentCacheKey);
@@ -340,6 +582,10 @@ public class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener{
 	String getLoadingUri() {
 		return uri;
 	}
+
+	MemoryCacheKey getMemoryCacheKey() {
+		return memoryCacheKey;
+	}
 	
 	static void runTask(Runnable r, Handler handler, ImageLoaderEngine engine) {
 		if (handler == null) {
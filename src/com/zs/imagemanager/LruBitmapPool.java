@@ -0,0 +1,283 @@
+package com.zs.imagemanager;
+
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Bitmapó
+ * <p/>
+ * 治ʹõĿɱ䣨mutablebitmapʱͨ{@link android.graphics.BitmapFactory.Options#inBitmap}ڴ棬
+ * ٻƵڴGC
+ * <p/>
+ * ù
+ * <ul>
+ * <li>API 19ϣֻҪbitmapĿֽСڽҪֽɸã˰ֽͰȡСҪֵСͰ</li>
+ * <li>API 11~18ֻܸÿߺConfigȫͬbitmapinSampleSizeΪ1˰߼ConfigͰȷƥ䣻</li>
+ * <li>API 11²ָ֧ãвκbitmap</li>
+ * </ul>
+ * ԼڴޣʱȺ˳bitmap
+ * @author zhangshuo
+ */
+public class LruBitmapPool {
+
+	/** API 19ϰֽƥʱõbitmapҪСıһźܴbitmapСͼƬ*/
+	private static final int MAX_SIZE_MULTIPLE = 4;
+
+	/** ռڴ*/
+	private final int maxSize;
+
+	/** ǰЧڴޣڴʱ*/
+	private int currentMaxSize;
+
+	/** ǰbitmapռڴ*/
+	private int size;
+
+	/** ͰAPI 19ϵkeyΪֽµkeyΪ߼ConfigϳɵֵͰڰȺ˳*/
+	private final TreeMap<Long, LinkedList<Entry>> buckets = new TreeMap<Long, LinkedList<Entry>>();
+
+	/** bitmapȺ˳Уڱ˫ڳʱȡʱO(1)Ƴ*/
+	private final Entry head;
+
+	private int hitCount;
+	private int missCount;
+	private int putCount;
+	private int evictionCount;
+
+	/**
+	 * @param maxSize ռڴ
+	 */
+	public LruBitmapPool(int maxSize){
+		this.maxSize = maxSize;
+		this.currentMaxSize = maxSize;
+		head = new Entry(null, null);
+		head.prev = head;
+		head.next = head;
+	}
+
+	/**
+	 * bitmapУɱ䡢ѻաbitmapϵͳָ֧ʱ
+	 * @param bitmap
+	 * @return true ѷУ߲ʹøbitmapfalse δ
+	 */
+	public synchronized boolean put(Bitmap bitmap){
+		if(null == bitmap){
+			throw new NullPointerException("bitmap == null");
+		}
+		if(!isReuseSupported() || bitmap.isRecycled() || !bitmap.isMutable()){
+			return false;
+		}
+		int bitmapSize = sizeOf(bitmap);
+		if(bitmapSize > currentMaxSize){
+			return false;
+		}
+
+		Long key = keyOf(bitmap);
+		LinkedList<Entry> bucket = buckets.get(key);
+		if(null == bucket){
+			bucket = new LinkedList<Entry>();
+			buckets.put(key, bucket);
+		}
+		Entry entry = new Entry(bitmap, key);
+		bucket.addLast(entry);
+		linkLast(entry);
+		size = size + bitmapSize;
+		putCount++;
+
+		trimToSize(currentMaxSize);
+		return true;
+	}
+
+	/**
+	 * ȡһſwidth x heightconfigͼƬbitmap
+	 * @param width Ŀ
+	 * @param height ĸ
+	 * @param config ConfigΪnullʱARGB_8888
+	 * @return ûкʵbitmapʱnull
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config){
+		if(!isReuseSupported() || width <= 0 || height <= 0){
+			return null;
+		}
+		if(null == config){
+			config = Bitmap.Config.ARGB_8888;
+		}
+
+		Long key;
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+			long needed = (long) width * height * bytesPerPixel(config);
+			key = buckets.ceilingKey(needed);
+			if(null != key && key > needed * MAX_SIZE_MULTIPLE){
+				key = null;
+			}
+		}else{
+			key = keyOf(width, height, config);
+			if(!buckets.containsKey(key)){
+				key = null;
+			}
+		}
+		if(null == key){
+			missCount++;
+			return null;
+		}
+
+		Entry entry = removeFromBucket(key);
+		unlink(entry);
+		size = size - sizeOf(entry.bitmap);
+		hitCount++;
+		return entry.bitmap;
+	}
+
+	/**
+	 * bitmapֱʣµbitmapռڴ治maxSize
+	 * @param maxSize ڴ-1
+	 */
+	public synchronized void trimToSize(int maxSize){
+		while (size > maxSize && head.next != head) {
+			Entry entry = head.next;
+			unlink(entry);
+			//ͰȫֶȺ˳УȡʱͬʱƳbitmapͰĵһ
+			LinkedList<Entry> bucket = buckets.get(entry.key);
+			bucket.removeFirst();
+			if(bucket.isEmpty()){
+				buckets.remove(entry.key);
+			}
+			size = size - sizeOf(entry.bitmap);
+			evictionCount++;
+			entry.bitmap.recycle();
+		}
+	}
+
+	/**
+	 * ǰЧڴޣ޵bitmap
+	 * @param multiplier ڹʱָmaxSizeı0~1Ϊ1ʱָԭޣΪ0ʱ
+	 */
+	public synchronized void setSizeMultiplier(float multiplier){
+		if(multiplier < 0 || multiplier > 1){
+			throw new IllegalArgumentException("multiplier must be between 0 and 1");
+		}
+		currentMaxSize = Math.round(maxSize * multiplier);
+		trimToSize(currentMaxSize);
+	}
+
+	/**
+	 * ճ
+	 */
+	public void clear(){
+		trimToSize(-1);
+	}
+
+	public synchronized int size(){
+		return size;
+	}
+
+	public int maxSize(){
+		return maxSize;
+	}
+
+	public synchronized int currentMaxSize(){
+		return currentMaxSize;
+	}
+
+	public synchronized int getHitCount(){
+		return hitCount;
+	}
+
+	public synchronized int getMissCount(){
+		return missCount;
+	}
+
+	public synchronized int getPutCount(){
+		return putCount;
+	}
+
+	public synchronized int getEvictionCount(){
+		return evictionCount;
+	}
+
+	/**
+	 * @return ʱǷԸbitmap
+	 */
+	public static boolean isReuseSupported(){
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	private Entry removeFromBucket(Long key){
+		LinkedList<Entry> bucket = buckets.get(key);
+		Entry entry = bucket.removeLast();
+		if(bucket.isEmpty()){
+			buckets.remove(key);
+		}
+		return entry;
+	}
+
+	/** ȫ˳Ķβ*/
+	private void linkLast(Entry entry){
+		entry.prev = head.prev;
+		entry.next = head;
+		head.prev.next = entry;
+		head.prev = entry;
+	}
+
+	/** ȫ˳Ƴ*/
+	private void unlink(Entry entry){
+		entry.prev.next = entry.next;
+		entry.next.prev = entry.prev;
+		entry.prev = null;
+		entry.next = null;
+	}
+
+	private Long keyOf(Bitmap bitmap){
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+			return (long) sizeOf(bitmap);
+		}
+		return keyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+	}
+
+	private static Long keyOf(int width, int height, Bitmap.Config config){
+		int configOrdinal = null == config ? 0 : config.ordinal() + 1;
+		return ((long) width << 32) | ((long) height << 4) | configOrdinal;
+	}
+
+	private static int sizeOf(Bitmap bitmap){
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+			return bitmap.getAllocationByteCount();
+		}
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private static int bytesPerPixel(Bitmap.Config config){
+		switch (config) {
+		case ALPHA_8:
+			return 1;
+		case RGB_565:
+		case ARGB_4444:
+			return 2;
+		case ARGB_8888:
+		default:
+			return 4;
+		}
+	}
+
+	/** еһbitmapȫ˳еλ*/
+	private static final class Entry {
+		final Bitmap bitmap;
+		/** Ͱkey*/
+		final Long key;
+		Entry prev;
+		Entry next;
+
+		Entry(Bitmap bitmap, Long key){
+			this.bitmap = bitmap;
+			this.key = key;
+		}
+	}
+
+	@Override
+	public synchronized String toString(){
+		return String.format("LruBitmapPool[maxSize=%d,currentMaxSize=%d,size=%d,hits=%d,misses=%d,puts=%d,evictions=%d]",
+				maxSize, currentMaxSize, size, hitCount, missCount, putCount, evictionCount);
+	}
+}
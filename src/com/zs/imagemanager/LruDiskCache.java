@@ -1,30 +1,69 @@
 package com.zs.imagemanager;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.util.Collections;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
 /**
  * SDCard
+ * <p/>
+ * ļС˳򣩱ڴУ¼ֻ׷ӵ־ļjournalУʱ˳ȡһ־ؽ
+ * ҪĿ¼ȡļĴС޸ʱ䡣־ÿһһ¼
+ * <ul>
+ * <li>DIRTY nameʼдļͬCLEANREMOVE˵дδɣʱɾʱļ</li>
+ * <li>CLEAN name length [segment offset]ļдɣ¼С洢ݻ¼ڶεıżƫ</li>
+ * <li>REMOVE nameļѱɾ</li>
+ * <li>READ nameļʣؽ˳</li>
+ * <li>META name expireTime etag lastModifiedļHTTPϢ{@link CacheMetadata}CLEAN֤֮Чʱ¼
+ * CLEAN֮ǰϢ</li>
+ * </ul>
+ * ¼ʱǰд־ѹû־ľɻĿ¼ڵһʹʱɨһ飬־
+ * <p/>
+ * ָpackThresholdʱôСݣͨͼΪļ׷ӵ{@link BlobStore}ĶļУ
+ * ͨ{@link #getPacked(String)}λöȡôСԱΪļͨ{@link #get(String)}ء
+ * ʧЧݽ϶ʱɺ̨߳̽ЧݸƵǰκɾΡ
+ * <p/>
+ * д̲̭߳СmaxSizeˮλʱύ̨ά̣߳䰴˳̭ˮλɾ̭ļ
+ * ά߳ͬʱѹԼ̱ԭġûм¼ʱļͻļյֽͨ{@link #getReclaimedBytes()}ȡ
+ * <p/>
+ * {@link DiskCacheSizePolicy}ʱmaxSizeά̰߳ÿռ㣺ÿдmaxSize{@value #RESIZE_INTERVAL_PERCENT}%
+ * дʧܻ{@link #onLowStorage()}¼㣬ÿռʱ̭֮Сlong㣬Գ2G
+ * <p/>
+ * ļuriMD5ֵļǰַĿ¼ţa/b/ab12...ÿĿ¼еļڽСķΧڡ
+ * ɰ汾hashCodeƽڻĿ¼еļ¼޷ȷĸuriͬuriͬhashCodeʱֱɾǨơ
  * @author zhangshuo
  */
 public class LruDiskCache {
 
 	private final String TAG = LruDiskCache.class.getSimpleName();
-	
+
 	/** ÿIOĻĬ32K*/
 	public final int DEFAULT_BUFFER_SIZE = 32 * 1024; // 32 Kb
 	/** ͼƬѹʽĬpng*/
@@ -33,29 +72,107 @@ public class LruDiskCache {
 	public final int DEFAULT_COMPRESS_QUALITY = 100;
 	/** ͼƬļĺ׺*/
 	private final String TEMP_IMAGE_POSTFIX = ".tmp";
-	/** ǷļС*/
-	private final int INVALID_SIZE = -1;
-	
+	/** ĬϵĴ洢ޣ64K׷ӵļ*/
+	public static final int DEFAULT_PACK_THRESHOLD = 64 * 1024;
+
+	/** ־ļ*/
+	static final String JOURNAL_FILE = "journal";
+	/** д־ʱʱļ*/
+	static final String JOURNAL_FILE_TEMP = "journal.tmp";
+	/** д־ʱԭ־ı*/
+	static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+	/** ־ļͷ*/
+	static final String MAGIC = "com.zs.imagemanager.LruDiskCache";
+	/** ־ʽ汾*/
+	static final String VERSION = "1";
+
+	private static final String CLEAN = "CLEAN";
+	private static final String DIRTY = "DIRTY";
+	private static final String REMOVE = "REMOVE";
+	private static final String READ = "READ";
+	private static final String META = "META";
+
+	/** ƬĿ¼Ĳÿļһַ16 * 16Ŀ¼*/
+	private static final int SHARD_LEVELS = 2;
+
+	/** Ĳ¡ٰԪ*/
+	static final int MIN_FILTER_CAPACITY = 1024;
+	/** ÿдmaxSizeĸðٷֱȣ{@link DiskCacheSizePolicy}¼һmaxSize*/
+	static final int RESIZE_INTERVAL_PERCENT = 5;
+	/** maxSizeˮλʱά߳һ̭maxSizeĸðٷֱȣˮλ*/
+	private static final int LOW_WATERMARK_PERCENT = 90;
+
+	/** ֻREAD¼ʱ־дļ̼*/
+	private static final long JOURNAL_FLUSH_INTERVAL_MILLIS = 10 * 1000;
+
+	/** ¼ﵽֵҲЧ¼ʱд־*/
+	private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
 	private final FileNameGenerator fileNameGenerator;
-	
+
 	/**
 	 * ļ洢Ŀ¼
 	 */
 	private final File cacheDir;
-	
+
+	private final File journalFile;
+	private final File journalFileTmp;
+	private final File journalFileBackup;
+
 	/**
 	 * ¼ǰļĴС
 	 */
-	private final AtomicInteger cacheSize;
+	private final AtomicLong cacheSize;
 	/**
-	 * ļֵ
+	 * ļֵsizePolicyʱά̸߳£this޸
 	 */
-	private final long maxSize;
+	private volatile long maxSize;
+	/** maxSizeĲԣΪnullʱmaxSize̶䣻ֻthis·*/
+	private DiskCacheSizePolicy sizePolicy;
+	/** ǷҪsizePolicy¼maxSize*/
+	private boolean resizePending;
+	/** ϴμmaxSize֮дֽ*/
+	private long bytesSinceResize;
 	/**
-	 * SDCardϱͼƬļķʱ
+	 * ļ¼˳Уδʵǰ棻ֻthis·
 	 */
-	private final Map<File, Long> lastUsageDates;
-	
+	private final LinkedHashMap<String, Entry> lruEntries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+
+	/** ׷־ֻthis·*/
+	private Writer journalWriter;
+	/** ־вٷӳǰļ¼*/
+	private int redundantOpCount;
+	/** ǷѼ*/
+	private boolean initialized;
+	/** ļĲ¡󴴽ļ뼰Ƴ£{@link #mightContain(String)}ȡʱ*/
+	private volatile CountingBloomFilter filter;
+	/** һν־дļʱ*/
+	private long lastJournalFlushTime;
+
+	/** ôСݴ洢0ȫΪļ*/
+	private final int packThreshold;
+	/** 洢ĶļpackThresholdΪ0ʱҲڶȡ֮ǰ洢*/
+	private final BlobStore blobStore;
+	/** bitmapʱѹʽ*/
+	private volatile Bitmap.CompressFormat compressFormat = DEFAULT_COMPRESS_FORMAT;
+	/** bitmapʱѹ*/
+	private volatile int compressQuality = DEFAULT_COMPRESS_QUALITY;
+
+	/** ִ̭ɾļѹĺ̨ά̣߳һҪάʱ*/
+	private Executor maintenanceExecutor;
+	/** Ƿύִάֻthis·*/
+	private boolean maintenanceScheduled;
+	/** άִڼµάҪύһ*/
+	private boolean maintenanceRequested;
+	/** Ƿ{@link #close()}֮ύάҲд־*/
+	private boolean closed;
+	/** Ƿûļ*/
+	private boolean orphanSweepPending;
+	/** ѴƳȴά߳ɾļֻthis·*/
+	private List<File> pendingDeletes = new ArrayList<File>();
+	/** ά߳ۼƻյֽ*/
+	private final AtomicLong reclaimedBytes = new AtomicLong();
+
 	/**
 	 * ʼSDCard
 	 * @param cacheDir ·
@@ -64,106 +181,848 @@ public class LruDiskCache {
 	public LruDiskCache(File cacheDir, long maxSize){
 		this(cacheDir, new FileNameGenerator(), maxSize);
 	}
-	
+
 	/**
-	 * ʼSDCard
+	 * ʼSDCard棻ڵһʹʱͨڹ߳У
 	 * @param cacheDir ·
 	 * @param fileNameGenerator ļ
 	 * @param maxSize 󻺴
 	 */
 	public LruDiskCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxSize){
+		this(cacheDir, fileNameGenerator, maxSize, 0);
+	}
+
+	/**
+	 * ʼSDCard棬Сݴ洢ڵһʹʱͨڹ߳У
+	 * @param cacheDir ·
+	 * @param fileNameGenerator ļ
+	 * @param maxSize 󻺴
+	 * @param packThreshold ôС׷ӵļУ0ȫΪļ
+	 */
+	public LruDiskCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxSize, int packThreshold){
+		if(packThreshold < 0){
+			throw new IllegalArgumentException("packThreshold < 0");
+		}
 		this.cacheDir = cacheDir;
 		this.fileNameGenerator = fileNameGenerator;
 		this.maxSize = maxSize;
-		this.cacheSize = new AtomicInteger();
-		this.lastUsageDates = Collections.synchronizedMap(new HashMap<File, Long>()); 
-		this.calculateCacheSizeAndFillUsageMap();
+		this.packThreshold = packThreshold;
+		this.blobStore = new BlobStore(cacheDir);
+		this.cacheSize = new AtomicLong();
+		this.journalFile = new File(cacheDir, JOURNAL_FILE);
+		this.journalFileTmp = new File(cacheDir, JOURNAL_FILE_TEMP);
+		this.journalFileBackup = new File(cacheDir, JOURNAL_FILE_BACKUP);
+	}
+
+	/**
+	 * ֮ά߳ļ̭maxSizeļ¼
+	 */
+	private synchronized void initialize(){
+		if(initialized){
+			return;
+		}
+		initialized = true;
+		loadIndex();
+		rebuildFilter();
+		orphanSweepPending = true;
+		scheduleMaintenance();
+	}
+
+	/**
+	 * ȶȡ־û־־ʱɨ軺Ŀ¼ݴµ־
+	 */
+	private void loadIndex(){
+		//д־Ĺбжʱʹñ
+		if(journalFileBackup.exists()){
+			if(journalFile.exists()){
+				journalFileBackup.delete();
+			}else{
+				journalFileBackup.renameTo(journalFile);
+			}
+		}
+
+		if(journalFile.exists()){
+			try {
+				readJournal();
+				processJournal();
+				if(redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD){
+					rebuildJournal();
+				}else{
+					journalWriter = newJournalWriter(true);
+				}
+				return;
+			} catch (IOException e) {
+				Log.e(TAG, "initialize--־𻵣ɨ軺Ŀ¼", e);
+				lruEntries.clear();
+				cacheSize.set(0);
+				redundantOpCount = 0;
+			}
+		}
+
+		scanCacheDir();
+		try {
+			rebuildJournal();
+		} catch (IOException e) {
+			Log.e(TAG, "initialize--־ʧ", e);
+		}
+	}
+
+	/**
+	 * ˳ȡ־ؽ˳
+	 * @throws IOException ־ͷȷȡʧ
+	 */
+	private void readJournal() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "US-ASCII"), DEFAULT_BUFFER_SIZE);
+		try {
+			String magic = reader.readLine();
+			String version = reader.readLine();
+			String blank = reader.readLine();
+			if(!MAGIC.equals(magic) || !VERSION.equals(version) || !"".equals(blank)){
+				throw new IOException("unexpected journal header: [" + magic + ", " + version + ", " + blank + "]");
+			}
+			int lineCount = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					readJournalLine(line);
+				} catch (IOException e) {
+					//ͨдһʱ̱ɱ֮ǰļ¼ȻЧغд־
+					Log.w(TAG, "readJournal--" + e.getMessage());
+					redundantOpCount = REDUNDANT_OP_COMPACT_THRESHOLD;
+					break;
+				}
+				//METACLEAN¼
+				if(!line.startsWith(META + ' ')){
+					lineCount++;
+				}
+			}
+			redundantOpCount = Math.max(redundantOpCount, lineCount - lruEntries.size());
+		} finally {
+			IoUtils.closeSilently(reader);
+		}
+	}
+
+	private void readJournalLine(String line) throws IOException {
+		int firstSpace = line.indexOf(' ');
+		if(firstSpace == -1){
+			throw new IOException("unexpected journal line: " + line);
+		}
+		String op = line.substring(0, firstSpace);
+		int secondSpace = line.indexOf(' ', firstSpace + 1);
+		String name = secondSpace == -1 ? line.substring(firstSpace + 1) : line.substring(firstSpace + 1, secondSpace);
+
+		if(REMOVE.equals(op)){
+			lruEntries.remove(name);
+			return;
+		}
+		Entry entry = lruEntries.get(name);
+		if(null == entry){
+			entry = new Entry(name);
+			lruEntries.put(name, entry);
+		}
+		if(CLEAN.equals(op) && secondSpace != -1){
+			String[] values = line.substring(secondSpace + 1).split(" ");
+			if(values.length != 1 && values.length != 3){
+				throw new IOException("unexpected journal line: " + line);
+			}
+			try {
+				entry.length = Long.parseLong(values[0]);
+				if(values.length == 3){
+					entry.segment = Integer.parseInt(values[1]);
+					entry.offset = Long.parseLong(values[2]);
+				}else{
+					entry.segment = -1;
+					entry.offset = 0;
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("unexpected journal line: " + line);
+			}
+			entry.readable = true;
+			entry.editing = false;
+			entry.metadata = null;
+		}else if(META.equals(op) && secondSpace != -1){
+			try {
+				entry.metadata = CacheMetadata.decode(line.substring(secondSpace + 1).split(" "));
+			} catch (NumberFormatException e) {
+				throw new IOException("unexpected journal line: " + line);
+			}
+		}else if(DIRTY.equals(op) && secondSpace == -1){
+			entry.editing = true;
+		}else if(!READ.equals(op) || secondSpace != -1){
+			throw new IOException("unexpected journal line: " + line);
+		}
 	}
-	
+
 	/**
-	 * ̼߳cacheDirļĴСļ޸ĵĺ뵽Map 
+	 * 㻺Сɾδдļ¼ʱļԼڶļѲĴ¼ǼݵĶ
 	 */
-	private void calculateCacheSizeAndFillUsageMap(){
-		new Thread(new Runnable() {
-			
+	private void processJournal(){
+		journalFileTmp.delete();
+		Map<Integer, Long> segmentLengths = blobStore.listSegments();
+		Map<Integer, Long> liveBytes = new HashMap<Integer, Long>();
+		long size = 0;
+		Iterator<Entry> it = lruEntries.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if(entry.editing){
+				new File(fileFor(entry.name).getPath() + TEMP_IMAGE_POSTFIX).delete();
+				entry.editing = false;
+			}
+			if(entry.readable && fileNameGenerator.isLegacyName(entry.name)){
+				//洢ĲεЧݣɶѹ
+				if(!entry.isPacked()){
+					pendingDeletes.add(fileFor(entry.name));
+				}
+				entry.readable = false;
+			}
+			if(entry.readable && entry.isPacked()){
+				Long segmentLength = segmentLengths.get(entry.segment);
+				if(null == segmentLength || entry.offset + entry.length > segmentLength){
+					entry.readable = false;
+				}else{
+					Long live = liveBytes.get(entry.segment);
+					liveBytes.put(entry.segment, (null == live ? 0 : live) + entry.length);
+				}
+			}
+			if(entry.readable){
+				size = size + entry.length;
+			}else{
+				it.remove();
+				redundantOpCount++;
+			}
+		}
+		cacheSize.set(size);
+		blobStore.open(liveBytes);
+	}
+
+	/**
+	 * û־ʱɨ軺Ŀ¼Ŀ¼޸ʱȷ˳򣻶ļеû޷λһɾ
+	 */
+	private void scanCacheDir(){
+		List<File> files = new ArrayList<File>();
+		listCachedFiles(cacheDir, 0, files);
+		File[] cachedFiles = files.toArray(new File[files.size()]);
+		Arrays.sort(cachedFiles, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified();
+				long r = rhs.lastModified();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		long size = 0;
+		for (File file : cachedFiles) {
+			String name = file.getName();
+			if(name.endsWith(TEMP_IMAGE_POSTFIX) || BlobStore.parseSegmentId(name) >= 0){
+				file.delete();
+				continue;
+			}
+			if(!file.isFile() || name.startsWith(JOURNAL_FILE)){
+				continue;
+			}
+			if(fileNameGenerator.isLegacyName(name)){
+				pendingDeletes.add(file);
+				continue;
+			}
+			Entry entry = new Entry(name);
+			entry.length = getSize(file);
+			entry.readable = true;
+			lruEntries.put(name, entry);
+			size = size + entry.length;
+		}
+		cacheSize.set(size);
+	}
+
+	/**
+	 * гĿ¼еļԼƬĿ¼еļ
+	 * @param dir
+	 * @param depth dirڵĿ¼㼶Ŀ¼Ϊ0
+	 * @param out
+	 */
+	private static void listCachedFiles(File dir, int depth, List<File> out){
+		File[] files = dir.listFiles();
+		if(null == files){
+			return;
+		}
+		for (File file : files) {
+			if(depth < SHARD_LEVELS && file.isDirectory() && file.getName().length() == 1){
+				listCachedFiles(file, depth + 1, out);
+			}else{
+				out.add(file);
+			}
+		}
+	}
+
+	/**
+	 * ǰд־ȥ¼
+	 * @throws IOException
+	 */
+	private synchronized void rebuildJournal() throws IOException {
+		if(null != journalWriter){
+			IoUtils.closeSilently(journalWriter);
+			journalWriter = null;
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTmp), "US-ASCII"), DEFAULT_BUFFER_SIZE);
+		try {
+			writer.write(MAGIC);
+			writer.write("\n");
+			writer.write(VERSION);
+			writer.write("\n");
+			writer.write("\n");
+			for (Entry entry : lruEntries.values()) {
+				if(entry.editing && !entry.readable){
+					writer.write(DIRTY + ' ' + entry.name + '\n');
+				}else{
+					writer.write(cleanRecord(entry) + '\n');
+					if(entry.editing){
+						writer.write(DIRTY + ' ' + entry.name + '\n');
+					}
+				}
+			}
+		} finally {
+			IoUtils.closeSilently(writer);
+		}
+
+		if(journalFile.exists()){
+			journalFileBackup.delete();
+			if(!journalFile.renameTo(journalFileBackup)){
+				throw new IOException("failed to back up journal");
+			}
+		}
+		if(!journalFileTmp.renameTo(journalFile)){
+			throw new IOException("failed to replace journal");
+		}
+		journalFileBackup.delete();
+
+		journalWriter = newJournalWriter(true);
+		redundantOpCount = 0;
+	}
+
+	/**
+	 * @param entry
+	 * @return ¼entryǰСλõCLEAN¼HTTPϢʱٸһMETA¼
+	 */
+	private static String cleanRecord(Entry entry){
+		String clean;
+		if(entry.isPacked()){
+			clean = CLEAN + ' ' + entry.name + ' ' + entry.length + ' ' + entry.segment + ' ' + entry.offset;
+		}else{
+			clean = CLEAN + ' ' + entry.name + ' ' + entry.length;
+		}
+		if(null == entry.metadata){
+			return clean;
+		}
+		return clean + '\n' + metaRecord(entry);
+	}
+
+	private static String metaRecord(Entry entry){
+		return META + ' ' + entry.name + ' ' + entry.metadata.encode();
+	}
+
+	private Writer newJournalWriter(boolean append) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, append), "US-ASCII"), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * ׷һ־¼thisµ
+	 * @param record
+	 * @param flush ǷдļREAD¼ʧֻӰ˳򣬲Ҫд룬ϴд볬
+	 * {@value #JOURNAL_FLUSH_INTERVAL_MILLIS}ʱд
+	 */
+	private void appendJournal(String record, boolean flush){
+		if(null == journalWriter){
+			return;
+		}
+		try {
+			journalWriter.write(record);
+			journalWriter.write('\n');
+			if(flush || SystemClock.uptimeMillis() - lastJournalFlushTime >= JOURNAL_FLUSH_INTERVAL_MILLIS){
+				flushJournal();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "appendJournal--д־ʧ->" + record, e);
+		}
+	}
+
+	/**
+	 * ¼һ¼¼ʱά߳д־getputڳʱͬдthisµ
+	 */
+	private void onRedundantOp(){
+		redundantOpCount++;
+		if(isJournalRebuildRequired()){
+			scheduleMaintenance();
+		}
+	}
+
+	/**
+	 * @return ¼ǷѶൽҪд־thisµ
+	 */
+	private boolean isJournalRebuildRequired(){
+		return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= lruEntries.size();
+	}
+
+	/**
+	 * ʼдļ¼DIRTY
+	 * @param name ļ
+	 */
+	private synchronized void beginEdit(String name){
+		initialize();
+		Entry entry = lruEntries.get(name);
+		if(null == entry){
+			entry = new Entry(name);
+			lruEntries.put(name, entry);
+			filter.add(name);
+		}
+		entry.editing = true;
+		appendJournal(DIRTY + ' ' + name, true);
+	}
+
+	/**
+	 * дļдɹʱ¼CLEANʱά̭߳ʧʱԭȻ¼REMOVE
+	 * @param name ļ
+	 * @param file ļ
+	 * @param os дݵ洢ʱ¼ݵλ
+	 * @param success Ƿдɹ
+	 * @param metadata дɹʱݵHTTPϢΪnull
+	 */
+	private synchronized void completeEdit(String name, File file, EntryOutputStream os, boolean success, CacheMetadata metadata){
+		Entry entry = lruEntries.get(name);
+		if(null == entry){
+			//дл汻
+			entry = new Entry(name);
+			lruEntries.put(name, entry);
+			filter.add(name);
+		}
+		entry.editing = false;
+		if(success || (entry.readable && (entry.isPacked() || file.exists()))){
+			if(success){
+				BlobStore.Slot slot = os.getSlot();
+				//ԭǴ洢ģеļ
+				boolean wasPacked = entry.readable && entry.isPacked();
+				if(entry.readable){
+					cacheSize.addAndGet(-entry.length);
+					if(entry.isPacked()){
+						blobStore.free(entry.segment, entry.length);
+					}
+				}
+				if(null != slot && !wasPacked && file.exists()){
+					//ԭļ̭߱򱾴дûɾļѱ滻
+					//¼Уά̲߳ɾļ
+					file.delete();
+				}
+				if(null == slot){
+					entry.length = getSize(file);
+					entry.segment = -1;
+					entry.offset = 0;
+				}else{
+					entry.length = slot.length;
+					entry.segment = slot.segment;
+					entry.offset = slot.offset;
+				}
+				entry.readable = true;
+				entry.metadata = metadata;
+				cacheSize.addAndGet(entry.length);
+				bytesSinceResize = bytesSinceResize + entry.length;
+				if(null != sizePolicy && bytesSinceResize >= maxSize / 100 * RESIZE_INTERVAL_PERCENT){
+					resizePending = true;
+				}
+			}
+			appendJournal(cleanRecord(entry), true);
+		}else{
+			if(entry.readable){
+				cacheSize.addAndGet(-entry.length);
+				if(entry.isPacked()){
+					blobStore.free(entry.segment, entry.length);
+				}
+			}
+			if(file.exists()){
+				//̭򱾴дûɾļ
+				pendingDeletes.add(file);
+			}
+			lruEntries.remove(name);
+			filter.remove(name);
+			entry.readable = false;
+			appendJournal(REMOVE + ' ' + name, true);
+		}
+		if(!success && null != sizePolicy){
+			//дʧܿǷ
+			resizePending = true;
+		}
+		//DIRTY֮ǰCLEAN
+		onRedundantOp();
+		scheduleMaintenance();
+	}
+
+	/**
+	 * СmaxSizeˮλʱ˳ƳδʵļֱˮλmaxSize{@value #LOW_WATERMARK_PERCENT}%
+	 * ֮ĶputҪ̭ÿƳһļO(1)洢ֻڶмΪʧЧļ{@link #pendingDeletes}
+	 * ά߳thisµ
+	 */
+	private void trimToSize(){
+		if(cacheSize.get() <= maxSize){
+			return;
+		}
+		long lowWatermark = maxSize * LOW_WATERMARK_PERCENT / 100;
+		Iterator<Entry> it = lruEntries.values().iterator();
+		while (cacheSize.get() > lowWatermark && it.hasNext()) {
+			Entry entry = it.next();
+			//дļձʹλڶβٻ
+			if(entry.editing || !entry.readable){
+				continue;
+			}
+			it.remove();
+			filter.remove(entry.name);
+			entry.readable = false;
+			cacheSize.addAndGet(-entry.length);
+			appendJournal(REMOVE + ' ' + entry.name, false);
+			redundantOpCount = redundantOpCount + 2;
+			if(entry.isPacked()){
+				blobStore.free(entry.segment, entry.length);
+			}else{
+				pendingDeletes.add(fileFor(entry.name));
+			}
+		}
+		flushJournal();
+	}
+
+	/**
+	 * ɾѴƳļͬļڴ֮ǰѱд룬ÿļthisȷϺɾ
+	 * ļ֮ͷ᳤ʱgetput¼ʱļµļ¼𣺵ʱµļ滻
+	 * 洢дʧʱ{@link #completeEdit}ɾ
+	 * @param files
+	 * @return ɾֽ
+	 */
+	private long deleteFiles(List<File> files){
+		long deleted = 0;
+		for (File file : files) {
+			synchronized (this) {
+				//containsKeyı˳
+				if(lruEntries.containsKey(file.getName())){
+					continue;
+				}
+				long length = file.length();
+				if(file.delete()){
+					deleted = deleted + length;
+				}else if(file.exists()){
+					Log.w(TAG, "deleteFiles--ɾʧ->" + file);
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * ҪάĹļ¼maxSizeˮλȴɾļԪعࡢ־¼ࡢҪѹĶΣʱ
+	 * ύά̣߳thisµ
+	 */
+	private void scheduleMaintenance(){
+		if(closed){
+			return;
+		}
+		if(!orphanSweepPending && !resizePending && cacheSize.get() <= maxSize && pendingDeletes.isEmpty()
+				&& lruEntries.size() <= filter.capacity() && !isJournalRebuildRequired() && blobStore.nextCompactionCandidate() < 0){
+			return;
+		}
+		if(maintenanceScheduled){
+			maintenanceRequested = true;
+			return;
+		}
+		maintenanceScheduled = true;
+		if(null == maintenanceExecutor){
+			maintenanceExecutor = DefaultConfigurationFactory.createExecutor(1, Thread.MIN_PRIORITY);
+		}
+		maintenanceExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
-				// TODO Auto-generated method stub
-				int size = 0;
-				File[] cachedFiles  = cacheDir.listFiles();
-				if(null != cachedFiles){
-					for (int i = 0; i < cachedFiles.length; i++) {
-						size = size + getSize(cachedFiles[i]);
-						//ļ޸ʱ뵽map
-						lastUsageDates.put(cachedFiles[i], cachedFiles[i].lastModified());
+				try {
+					runMaintenance();
+				} finally {
+					synchronized (LruDiskCache.this) {
+						maintenanceScheduled = false;
+						if(maintenanceRequested){
+							maintenanceRequested = false;
+							scheduleMaintenance();
+						}
 					}
-					cacheSize.set(size);
 				}
-				
 			}
-		}).start();
+		});
+	}
+
+	/**
+	 * άִ߳Уļ¼maxSizḙˮλɾļСؽѹΣд־
+	 * ¼յֽ
+	 */
+	private void runMaintenance(){
+		boolean sweep;
+		synchronized (this) {
+			sweep = orphanSweepPending;
+			orphanSweepPending = false;
+		}
+		long sweptBytes = sweep ? sweepOrphanedFiles() : 0;
+
+		resize();
+
+		List<File> files;
+		synchronized (this) {
+			trimToSize();
+			files = pendingDeletes;
+			pendingDeletes = new ArrayList<File>();
+			if(lruEntries.size() > filter.capacity()){
+				rebuildFilter();
+			}
+		}
+		long deletedBytes = deleteFiles(files);
+
+		long compactedBytes = 0;
+		int id;
+		long reclaimed;
+		while ((id = blobStore.nextCompactionCandidate()) >= 0 && (reclaimed = compactSegment(id)) >= 0) {
+			compactedBytes = compactedBytes + reclaimed;
+		}
+
+		synchronized (this) {
+			if(!closed && isJournalRebuildRequired()){
+				try {
+					rebuildJournal();
+				} catch (IOException e) {
+					Log.e(TAG, "runMaintenance--д־ʧ", e);
+				}
+			}
+		}
+
+		long total = sweptBytes + deletedBytes + compactedBytes;
+		if(total > 0){
+			reclaimedBytes.addAndGet(total);
+			Log.i(TAG, "runMaintenance--->" + total + " (ļ:" + sweptBytes + " ̭:" + deletedBytes
+					+ " ѹ:" + compactedBytes + ") ǰС->" + cacheSize.get());
+		}
+	}
+
+	/**
+	 * ҪʱsizePolicy¼maxSizeѯϢʱ
+	 */
+	private void resize(){
+		DiskCacheSizePolicy policy;
+		synchronized (this) {
+			policy = resizePending ? sizePolicy : null;
+			resizePending = false;
+			bytesSinceResize = 0;
+		}
+		if(null == policy){
+			return;
+		}
+		long newMaxSize = policy.computeMaxSize(cacheDir, cacheSize.get());
+		if(newMaxSize < 0){
+			Log.w(TAG, "resize--޷ȡϢ->" + cacheDir);
+			return;
+		}
+		synchronized (this) {
+			if(policy == sizePolicy && newMaxSize != maxSize){
+				Log.i(TAG, "resize--" + maxSize + "->" + newMaxSize);
+				maxSize = newMaxSize;
+			}
+		}
+	}
+
+	/**
+	 * ɾ̱дʧܵԭʱļļûжӦ¼д룩Ĳɾthisжϲɾ
+	 * @return ɾֽ
+	 */
+	private long sweepOrphanedFiles(){
+		List<File> files = new ArrayList<File>();
+		listCachedFiles(cacheDir, 0, files);
+		long swept = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if(!file.isFile() || name.startsWith(JOURNAL_FILE) || BlobStore.parseSegmentId(name) >= 0){
+				continue;
+			}
+			String entryName = name.endsWith(TEMP_IMAGE_POSTFIX) ? name.substring(0, name.length() - TEMP_IMAGE_POSTFIX.length()) : name;
+			synchronized (this) {
+				//containsKeyı˳
+				if(lruEntries.containsKey(entryName)){
+					continue;
+				}
+				long length = file.length();
+				if(file.delete()){
+					swept = swept + length;
+				}
+			}
+		}
+		return swept;
+	}
+
+	/**
+	 * ümaxSizeĲԣ֮ά̰߳ÿռ¼㣻ΪnullʱֵǰmaxSize
+	 * @param policy
+	 */
+	public synchronized void setSizePolicy(DiskCacheSizePolicy policy) {
+		sizePolicy = policy;
+		resizePending = null != policy;
+		if(initialized){
+			scheduleMaintenance();
+		}
 	}
-	
+
+	/**
+	 * 洢ռ䲻ʱã{@link ImageLoader}յ{@link android.content.Intent#ACTION_DEVICE_STORAGE_LOW}ʱԶã
+	 * {@link DiskCacheSizePolicy}ʱ¼maxSizḙĲ
+	 */
+	public synchronized void onLowStorage() {
+		if(null == sizePolicy){
+			return;
+		}
+		resizePending = true;
+		if(initialized){
+			scheduleMaintenance();
+		}
+	}
+
+	/**
+	 * @return ǰлݵĴС
+	 */
+	public long size() {
+		return cacheSize.get();
+	}
+
+	/**
+	 * @return ǰЧ󻺴
+	 */
+	public long maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return ά߳ۼƻյֽ̭ļļѹͷŵĿռ
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	/**
+	 * ЧݸƵǰβ֮ɾöΣάִ߳Удʱ
+	 * @param id α
+	 * @return ͷŵֽεĳȼȥƵݣдʧʱ-1ֹͣѹ
+	 */
+	private long compactSegment(int id){
+		List<Entry> entries = new ArrayList<Entry>();
+		long[] offsets;
+		int[] lengths;
+		synchronized (this) {
+			for (Entry entry : lruEntries.values()) {
+				if(entry.readable && entry.segment == id){
+					entries.add(entry);
+				}
+			}
+			offsets = new long[entries.size()];
+			lengths = new int[entries.size()];
+			for (int i = 0; i < entries.size(); i++) {
+				offsets[i] = entries.get(i).offset;
+				//洢ݲpackThreshold
+				lengths[i] = (int) entries.get(i).length;
+			}
+		}
+
+		BlobStore.Segment segment = blobStore.acquire(id);
+		if(null == segment){
+			return -1;
+		}
+		long copied = 0;
+		try {
+			for (int i = 0; i < entries.size(); i++) {
+				BlobStore.Slot moved = blobStore.append(blobStore.read(segment, offsets[i], lengths[i]));
+				synchronized (this) {
+					Entry entry = entries.get(i);
+					//ڼ䱻̭ɾдʱƵֱʧЧ
+					if(entry.readable && entry.segment == id && entry.offset == offsets[i]){
+						entry.segment = moved.segment;
+						entry.offset = moved.offset;
+						appendJournal(cleanRecord(entry), false);
+						if(entry.editing){
+							appendJournal(DIRTY + ' ' + entry.name, false);
+						}
+						onRedundantOp();
+						copied = copied + moved.length;
+					}else{
+						blobStore.free(moved.segment, moved.length);
+					}
+				}
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "compactSegment--ѹʧ->" + id, e);
+			return -1;
+		} finally {
+			blobStore.release(segment);
+		}
+
+		synchronized (this) {
+			for (Entry entry : lruEntries.values()) {
+				if(entry.readable && entry.segment == id){
+					//ڼм¼λڸöΣѹһ
+					return 0;
+				}
+			}
+			//λд־ɾԭĶ
+			flushJournal();
+			return Math.max(0, blobStore.retire(id) - copied);
+		}
+	}
+
+	private void flushJournal(){
+		if(null == journalWriter){
+			return;
+		}
+		lastJournalFlushTime = SystemClock.uptimeMillis();
+		try {
+			journalWriter.flush();
+		} catch (IOException e) {
+			Log.e(TAG, "flushJournal--д־ʧ", e);
+		}
+	}
+
 	/**
 	 * bitmapSDCardؽ
-	 * @param key
+	 * @param os
 	 * @param imageStream
 	 * @param listener
 	 * @return true ɹfalseʧ
 	 * @throws IOException
 	 */
-	private boolean save(String key, InputStream imageStream, IoUtils.CopyListener listener) throws IOException {
-		File imageFile = getFile(key);
-		File tmpFile = new File(imageFile.getAbsolutePath() + TEMP_IMAGE_POSTFIX);
+	private boolean save(EntryOutputStream os, InputStream imageStream, IoUtils.CopyListener listener) throws IOException {
 		boolean loaded = false;
 		try {
-			OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile), DEFAULT_BUFFER_SIZE);
-			try {
-				loaded = IoUtils.copyStream(imageStream, os, listener, DEFAULT_BUFFER_SIZE);
-			} finally {
-				IoUtils.closeSilently(os);
-			}
+			loaded = IoUtils.copyStream(imageStream, os, listener, DEFAULT_BUFFER_SIZE) && os.commit();
 		} finally {
 			IoUtils.closeSilently(imageStream);
-			if (loaded && !tmpFile.renameTo(imageFile)) {
-				loaded = false;
-			}
 			if (!loaded) {
-				tmpFile.delete();
+				os.abort();
 			}
 		}
 		return loaded;
 	}
-	
+
 	/**
-	 * bitmapSDCard
-	 * @param key
+	 * bitmapSDCardbitmapԹУᱻ
+	 * @param os
 	 * @param bitmap
 	 * @return trueɹfalseʧ
 	 * @throws IOException
 	 */
-	private boolean save(String key, Bitmap bitmap) throws IOException {
-		File imageFile = getFile(key);
-		File tmpFile = new File(imageFile.getAbsolutePath() + TEMP_IMAGE_POSTFIX);
-		OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile), DEFAULT_BUFFER_SIZE);
+	private boolean save(EntryOutputStream os, Bitmap bitmap) throws IOException {
 		boolean savedSuccessfully = false;
 		try {
-			savedSuccessfully = bitmap.compress(DEFAULT_COMPRESS_FORMAT, DEFAULT_COMPRESS_QUALITY, os);
+			savedSuccessfully = bitmap.compress(compressFormat, compressQuality, os) && os.commit();
 		} finally {
-			IoUtils.closeSilently(os);
-			if (savedSuccessfully && !tmpFile.renameTo(imageFile)) {
-				savedSuccessfully = false;
-			}
 			if (!savedSuccessfully) {
-				tmpFile.delete();
+				os.abort();
 			}
 		}
-		bitmap.recycle();
 		return savedSuccessfully;
 	}
-	
+
 	/**
-	 * bitmap浽SDCardӵmap¼ɹŷtrue򷵻false
+	 * bitmap浽SDCardӵɹŷtrue򷵻false
 	 * @param key
 	 * @param imageStream
 	 * @param listener ΪnullʱصغͱbitmapĽȣͨصֵֹͣbitmap
@@ -171,157 +1030,517 @@ public class LruDiskCache {
 	 * @throws IOException
 	 */
 	public boolean put(String key, InputStream imageStream, IoUtils.CopyListener listener) throws IOException{
-		boolean isSaved = this.save(key, imageStream, listener);
-		if(isSaved){
-			return this.putToMap(key);
-		}else{
-			return isSaved;
+		return put(key, imageStream, listener, null);
+	}
+
+	/**
+	 * bitmapHTTPϢ浽SDCardӵɹŷtrue򷵻false
+	 * @param key
+	 * @param imageStream
+	 * @param listener ΪnullʱصغͱbitmapĽȣͨصֵֹͣbitmap
+	 * @param metadata ӦHTTPϢΪnull
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean put(String key, InputStream imageStream, IoUtils.CopyListener listener, CacheMetadata metadata) throws IOException{
+		File file = this.getFile(key);
+		if(null == file){
+			IoUtils.closeSilently(imageStream);
+			return false;
+		}
+		String name = file.getName();
+		beginEdit(name);
+		EntryOutputStream os = new EntryOutputStream(file);
+		boolean isSaved = false;
+		try {
+			isSaved = this.save(os, imageStream, listener);
+		} finally {
+			completeEdit(name, file, os, isSaved, metadata);
 		}
+		return isSaved;
 	}
-	
+
 	/**
-	 * bitmap浽SDCardӵmap¼ɹŷtrue򷵻false
+	 * bitmap浽SDCardӵɹŷtrue򷵻false
 	 * @param key
 	 * @param bitmap
 	 * @return
 	 * @throws IOException
 	 */
 	public boolean put(String key, Bitmap bitmap) throws IOException{
-		boolean isSaved = this.save(key, bitmap);
-		if(isSaved){
-			return this.putToMap(key);
-		}else{
-			return isSaved;
+		return put(key, bitmap, null);
+	}
+
+	/**
+	 * bitmapHTTPϢ浽SDCardӵɹŷtrue򷵻false
+	 * @param key
+	 * @param bitmap
+	 * @param metadata ԭͼӦHTTPϢΪnull
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean put(String key, Bitmap bitmap, CacheMetadata metadata) throws IOException{
+		File file = this.getFile(key);
+		if(null == file){
+			return false;
+		}
+		String name = file.getName();
+		beginEdit(name);
+		EntryOutputStream os = new EntryOutputStream(file);
+		boolean isSaved = false;
+		try {
+			isSaved = this.save(os, bitmap);
+		} finally {
+			completeEdit(name, file, os, isSaved, metadata);
+		}
+		return isSaved;
+	}
+
+	/**
+	 * {@link #put(String, Bitmap)}bitmapʱʹõѹʽĬΪ{@link #DEFAULT_COMPRESS_FORMAT}{@link #DEFAULT_COMPRESS_QUALITY}
+	 * @param format
+	 * @param quality 0~100PNGʽԴ˲
+	 */
+	public void setCompressFormat(Bitmap.CompressFormat format, int quality) {
+		if(null == format){
+			throw new NullPointerException("format == null");
+		}
+		if(quality < 0 || quality > 100){
+			throw new IllegalArgumentException("quality must be between 0 and 100");
+		}
+		this.compressFormat = format;
+		this.compressQuality = quality;
+	}
+
+	/**
+	 * keyصĻļ¼ηʣ洢ͨ{@link #getPacked(String)}ȡ
+	 * <p/>
+	 * ˳ֻڴУREAD¼׷ӵ־Ļ¼дļʱ޸ļ޸ʱ䣻
+	 * вʱļϵͳʱֻһļǷ
+	 * @param key
+	 * @return ļڻΪ洢ʱnull
+	 */
+	public File get(String key) {
+		File file = this.getFile(key);
+		if(null == file){
+			return null;
+		}
+		Entry entry;
+		synchronized (this) {
+			initialize();
+			entry = lruEntries.get(file.getName());
+			if(null == entry || !entry.readable || entry.isPacked()){
+				return null;
+			}
+			appendJournal(READ + ' ' + entry.name, false);
+			onRedundantOp();
 		}
+		if(!file.exists()){
+			//ļⲿɾ
+			Log.e(TAG, "get--ļ--key->" + key);
+			removeEntry(entry);
+			return null;
+		}
+		return file;
 	}
-	
+
 	/**
-	 * ļӵMapУ㻺ļĴСǷ񳬹õ󻺴 
-     * ˾ɾȼǸļ 
+	 * ȡ洢ݣ¼ηʣڶļѴ򿪵FileChannelϰλöȡļ
 	 * @param key
-	 * @return true putɹfalse putʧ
-	 */
-	private boolean putToMap(String key){
-		File file = this.getFile(key);  
-        if(null == file || !file.exists()){
-        	Log.e(TAG, "putToMap--ļ--key->" + key);
-        	return false;
-        }
-		int valueSize = getSize(file);
-		int curCacheSize = this.cacheSize.get();
-		
-		while(curCacheSize + valueSize > maxSize){
-			int freedSize = removeNext();  
-            if (freedSize == INVALID_SIZE) break; // cache is empty (have nothing to delete)  
-            curCacheSize = this.cacheSize.addAndGet(-freedSize); 
-		}
-		cacheSize.addAndGet(valueSize);  
-		  
-        Long currentTime = System.currentTimeMillis();  
-        file.setLastModified(currentTime);  
-        lastUsageDates.put(file, currentTime);  
-        return true;
-	}
-	
-	/**
-	 * keyļ ļķʱ 
+	 * @return positionΪ0direct buffer߿Ա޸ģڡݵΪļȡʧʱnull
+	 */
+	public ByteBuffer getPacked(String key) {
+		File file = this.getFile(key);
+		if(null == file){
+			return null;
+		}
+		BlobStore.Segment segment;
+		long offset;
+		int length;
+		synchronized (this) {
+			initialize();
+			Entry entry = lruEntries.get(file.getName());
+			if(null == entry || !entry.readable || !entry.isPacked()){
+				return null;
+			}
+			segment = blobStore.acquire(entry.segment);
+			if(null == segment){
+				return null;
+			}
+			offset = entry.offset;
+			length = (int) entry.length;
+			appendJournal(READ + ' ' + entry.name, false);
+			onRedundantOp();
+		}
+		try {
+			return blobStore.read(segment, offset, length);
+		} catch (IOException e) {
+			Log.e(TAG, "getPacked--ȡʧ--key->" + key, e);
+			return null;
+		} finally {
+			blobStore.release(segment);
+		}
+	}
+
+	/**
+	 * ǷkeyӦļ¼һдģļϵͳҲı˳
 	 * @param key
 	 * @return
 	 */
-    public File get(String key) {  
-        File file = this.getFile(key);  
-        if(null == file || !file.exists()){
-        	Log.e(TAG, "get--ļ--key->" + key);
-        	return null;
-        }
-  
-        Long currentTime = System.currentTimeMillis();  
-        file.setLastModified(currentTime);  
-        lastUsageDates.put(file, currentTime);  
-  
-        return file;  
-    }  
-    
-    /**
-     * ͼƬkey·ͼƬSDCardϵ·File
-     * <p/>
-     * FileܶӦSDCardϴļʵ壬Ҳܲ
-     * @param key
-     * @return
-     */
-    private File getFile(String key) {
-    	if(TextUtils.isEmpty(key)){
-    		Log.e(TAG, "getFile--key->" + key);
-    		return null;
-    	}
-		String fileName = fileNameGenerator.generate(key);
-		return new File(cacheDir, fileName);
-	}
-  
-    /** 
-     * Ӳ̻ 
-     */  
-    public void clear() {  
-        lastUsageDates.clear();  
-        cacheSize.set(0);  
-    	File[] files = cacheDir.listFiles();
-    	if (files != null) {
-    		for (File f : files) {
-    			f.delete();
-    		}
-    	}
-    }  
-	
-	/**
-	 * ȡĻļɾ 
+	public synchronized boolean contains(String key) {
+		File file = this.getFile(key);
+		if(null == file){
+			return false;
+		}
+		initialize();
+		return lruEntries.containsKey(file.getName());
+	}
+
+	/**
+	 * @param key
+	 * @return keyӦݵHTTPϢڻûʱnull
+	 */
+	public synchronized CacheMetadata getMetadata(String key) {
+		File file = this.getFile(key);
+		if(null == file){
+			return null;
+		}
+		initialize();
+		Entry entry = lruEntries.get(file.getName());
+		return null == entry || !entry.readable ? null : entry.metadata;
+	}
+
+	/**
+	 * keyӦݵHTTPϢ֤ͨ304ݲֻӳЧ
+	 * @param key
+	 * @param metadata
+	 */
+	public synchronized void setMetadata(String key, CacheMetadata metadata) {
+		File file = this.getFile(key);
+		if(null == file || null == metadata){
+			return;
+		}
+		initialize();
+		Entry entry = lruEntries.get(file.getName());
+		if(null == entry || !entry.readable){
+			return;
+		}
+		boolean replaced = null != entry.metadata;
+		entry.metadata = metadata;
+		appendJournal(metaRecord(entry), true);
+		if(replaced){
+			onRedundantOp();
+		}
+	}
+
+	/**
+	 * ļϵͳͨ¡жkeyǷڻУύʱѡ̳߳أ
+	 * һʱҪȴ̳߳е
+	 * @param key
+	 * @return false һڻУtrue ڻУԼ1%δʱҲtrue
+	 */
+	public boolean mightContain(String key) {
+		CountingBloomFilter filter = this.filter;
+		if(null == filter){
+			return true;
+		}
+		if(TextUtils.isEmpty(key)){
+			return false;
+		}
+		return filter.mightContain(fileNameGenerator.generate(key));
+	}
+
+	/**
+	 * еļؽ¡Ԥһռ䣻thisµ
+	 */
+	private void rebuildFilter(){
+		CountingBloomFilter filter = new CountingBloomFilter(Math.max(MIN_FILTER_CAPACITY, lruEntries.size() * 2));
+		for (String name : lruEntries.keySet()) {
+			filter.add(name);
+		}
+		this.filter = filter;
+	}
+
+	/**
+	 * ļѲʱ¼Ƴ
+	 * @param entry
+	 */
+	private synchronized void removeEntry(Entry entry){
+		//ڼѱ̭д
+		if(lruEntries.get(entry.name) != entry || entry.editing){
+			return;
+		}
+		lruEntries.remove(entry.name);
+		filter.remove(entry.name);
+		entry.readable = false;
+		cacheSize.addAndGet(-entry.length);
+		appendJournal(REMOVE + ' ' + entry.name, true);
+		onRedundantOp();
+	}
+
+	/**
+	 * ־еļ¼ҪREADдļӦ˵̨ʱ
+	 */
+	public synchronized void flush() {
+		flushJournal();
+	}
+
+	/**
+	 * ͼƬkey·ͼƬSDCardϵ·File
+	 * <p/>
+	 * FileܶӦSDCardϴļʵ壬Ҳܲ
+	 * @param key
 	 * @return
 	 */
-	private int removeNext(){
-		if (lastUsageDates.isEmpty()) {  
-            return INVALID_SIZE;  
-        }  
-		
-		Long oldestUsage = null;  
-        File mostLongUsedFile = null; 
-        
-        Set<Entry<File, Long>> entries = lastUsageDates.entrySet();  
-        
-        synchronized (lastUsageDates) {  
-            for (Entry<File, Long> entry : entries) {  
-                if (mostLongUsedFile == null) {  
-                    mostLongUsedFile = entry.getKey();  
-                    oldestUsage = entry.getValue();  
-                } else {  
-                    Long lastValueUsage = entry.getValue();  
-                    if (lastValueUsage < oldestUsage) {  
-                        oldestUsage = lastValueUsage;  
-                        mostLongUsedFile = entry.getKey();  
-                    }  
-                }  
-            }  
-        }  
-        
-        int fileSize = 0;  
-        if (mostLongUsedFile != null) {  
-            if (mostLongUsedFile.exists()) {  
-                fileSize = getSize(mostLongUsedFile);  
-                if (mostLongUsedFile.delete()) {  
-                    lastUsageDates.remove(mostLongUsedFile);  
-                }  
-            } else {  
-                lastUsageDates.remove(mostLongUsedFile);  
-            }  
-        }  
-        return fileSize;  
-	}
-	
+	private File getFile(String key) {
+		if(TextUtils.isEmpty(key)){
+			Log.e(TAG, "getFile--key->" + key);
+			return null;
+		}
+		String fileName = fileNameGenerator.generate(key);
+		return fileFor(fileName);
+	}
+
+	/**
+	 * @param name ļ
+	 * @return ¸ʽļλƬĿ¼Уɰ汾ԶģļֱλڻĿ¼
+	 */
+	private File fileFor(String name){
+		if(!isShardedName(name)){
+			return new File(cacheDir, name);
+		}
+		StringBuilder path = new StringBuilder();
+		for (int i = 0; i < SHARD_LEVELS; i++) {
+			path.append(name.charAt(i)).append(File.separatorChar);
+		}
+		return new File(cacheDir, path.append(name).toString());
+	}
+
+	/**
+	 * @param name
+	 * @return ǷΪ{@link FileNameGenerator#generate(String)}ɵ32λСдʮļ
+	 */
+	private static boolean isShardedName(String name){
+		if(name.length() != 32){
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if((c < '0' || c > '9') && (c < 'a' || c > 'f')){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * رջ棺ֹͣάִ̣߳еάɺŶӵĲִУ־дļرգ֮ʹ
+	 */
+	public void close() {
+		ExecutorService executor;
+		synchronized (this) {
+			if(closed){
+				return;
+			}
+			closed = true;
+			executor = (ExecutorService) maintenanceExecutor;
+			maintenanceExecutor = null;
+			if(null != journalWriter){
+				flushJournal();
+				IoUtils.closeSilently(journalWriter);
+				journalWriter = null;
+			}
+		}
+		if(null != executor){
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Ӳ̻
+	 */
+	public synchronized void clear() {
+		initialize();
+		if(null != journalWriter){
+			IoUtils.closeSilently(journalWriter);
+			journalWriter = null;
+		}
+		//дļʱ¼
+		for (Entry entry : lruEntries.values()) {
+			entry.readable = false;
+		}
+		lruEntries.clear();
+		rebuildFilter();
+		cacheSize.set(0);
+		pendingDeletes.clear();
+		blobStore.clear();
+		deleteContents(cacheDir);
+		try {
+			rebuildJournal();
+		} catch (IOException e) {
+			Log.e(TAG, "clear--־ʧ", e);
+		}
+	}
+
+	/**
+	 * ɾĿ¼еļĿ¼
+	 * @param dir
+	 */
+	private static void deleteContents(File dir){
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.isDirectory()) {
+					deleteContents(f);
+				}
+				f.delete();
+			}
+		}
+	}
+
 	/**
 	 * ȡļĴС
 	 * @param file
 	 * @return
 	 */
-	private int getSize(File file) {  
-        return (int) file.length();  
-    } 
-	
+	private long getSize(File file) {
+		return file.length();
+	}
+
+	/** еһ¼*/
+	private static final class Entry {
+		/** Ŀ¼µļ*/
+		final String name;
+		/** ļС*/
+		long length;
+		/** 洢ʱڶεıţΪļʱΪ-1*/
+		int segment = -1;
+		/** 洢ʱڶеƫ*/
+		long offset;
+		/** Ƿдɵļ*/
+		boolean readable;
+		/** Ƿд*/
+		boolean editing;
+		/** HTTPϢûʱΪnull*/
+		CacheMetadata metadata;
+
+		Entry(String name){
+			this.name = name;
+		}
+
+		boolean isPacked(){
+			return segment >= 0;
+		}
+	}
+
+	/**
+	 * дһݣpackThresholdʱȱڴУɺ׷ӵļʱתΪдʱļɺΪļ
+	 */
+	private final class EntryOutputStream extends OutputStream {
+
+		private final File file;
+		private final File tmpFile;
+		/** 洢ǰݣתΪдʱļΪnull*/
+		private byte[] buffer;
+		private int count;
+		/** ʱļûгpackThresholdʱΪnull*/
+		private OutputStream fileStream;
+		/** 洢ݵλ*/
+		private BlobStore.Slot slot;
+		private boolean committed;
+
+		EntryOutputStream(File file){
+			this.file = file;
+			this.tmpFile = new File(file.getAbsolutePath() + TEMP_IMAGE_POSTFIX);
+			if(packThreshold > 0){
+				this.buffer = new byte[Math.min(packThreshold, DEFAULT_BUFFER_SIZE)];
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(null == fileStream && count + len > packThreshold){
+				spill();
+			}
+			if(null != fileStream){
+				fileStream.write(b, off, len);
+				return;
+			}
+			if(count + len > buffer.length){
+				buffer = Arrays.copyOf(buffer, Math.min(packThreshold, Math.max(buffer.length * 2, count + len)));
+			}
+			System.arraycopy(b, off, buffer, count, len);
+			count = count + len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if(null != fileStream){
+				fileStream.flush();
+			}
+		}
+
+		/**
+		 * packThresholdתΪдʱļ
+		 * @throws IOException
+		 */
+		private void spill() throws IOException {
+			FileOutputStream fos;
+			try {
+				fos = new FileOutputStream(tmpFile);
+			} catch (FileNotFoundException e) {
+				//ƬĿ¼һʹʱ
+				tmpFile.getParentFile().mkdirs();
+				fos = new FileOutputStream(tmpFile);
+			}
+			fileStream = new BufferedOutputStream(fos, DEFAULT_BUFFER_SIZE);
+			if(count > 0){
+				fileStream.write(buffer, 0, count);
+			}
+			buffer = null;
+		}
+
+		/**
+		 * дɣ洢߽ʱļΪļ
+		 * @return Ƿ񱣴ɹ
+		 * @throws IOException
+		 */
+		boolean commit() throws IOException {
+			if(null == fileStream && packThreshold == 0){
+				spill();
+			}
+			if(null != fileStream){
+				fileStream.close();
+				committed = tmpFile.renameTo(file);
+			}else{
+				slot = blobStore.append(buffer, count);
+				buffer = null;
+				committed = true;
+			}
+			return committed;
+		}
+
+		/**
+		 * дʧܣɾʱļ
+		 */
+		void abort(){
+			buffer = null;
+			if(null != fileStream && !committed){
+				IoUtils.closeSilently(fileStream);
+				tmpFile.delete();
+			}
+		}
+
+		/**
+		 * @return 洢ݵλãΪļʱΪnull
+		 */
+		BlobStore.Slot getSlot(){
+			return slot;
+		}
+	}
 }
@@ -1,176 +1,685 @@
 package com.zs.imagemanager;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.text.TextUtils;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
  * ڴ滺
  * <p/>
+ * ݱConcurrentHashMapУ˳̭{@link EvictionPolicy}άֻevictionLock޸ġ
+ * ֻеĽڵ¼ɳ߳طţ˷˳ǽƵģUI̵߳getԶᱻд߳
+ * <p/>
+ * еÿ{@link BitmapResource}ɻһã̭滻ʱ֪ͨͷŸá
+ * <p/>
+ * ÿbitmapĴС{@link Weigher}ڼʱһΣ֮ٸı䣬̭ʱֱӼȥÿ̭һڵ㶼O(1)
+ * С޶long㣬ڴ豸ϲ
+ * <p/>
  * עʵֲοGitHubԴĿuniversal image library AndroidϵͳLruCacheԴ
  * @author zhangshuo
  */
 public class LruMemoryCache {
 
 	private final String TAG = LruMemoryCache.class.getSimpleName();
-	
+
+	/** ĴС2*/
+	private static final int READ_BUFFER_SIZE = 32;
+	private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+	/** лѹļ¼ﵽֵʱԻط*/
+	private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+	/** ĬŵѻbitmapĿС*/
+	public static final float DEFAULT_MAX_DERIVED_SIZE_RATIO = 4f;
+
 	/**
 	 * ռڴ
 	 */
-	private final int maxSize;
-	
+	private final long maxSize;
+
 	/**
-	 * ǰռڴ
+	 * ǰЧڴޣڴʱͣѹָΪmaxSizeֻevictionLock޸
 	 */
-	private int size;
-	
-	private final LinkedHashMap<String, Bitmap> map;
-	
-	public LruMemoryCache(Context context, int maxSize){
+	private volatile long currentMaxSize;
+
+	/**
+	 * ǰռڴֻevictionLock޸
+	 */
+	private long size;
+
+	/** ÿbitmapĴС*/
+	private final Weigher weigher;
+
+	private final ConcurrentHashMap<MemoryCacheKey, Node> map;
+
+	/**
+	 * uriѻߴkey滻ֻevictionLock޸
+	 */
+	private final ConcurrentHashMap<String, MemoryCacheKey[]> sizesForUri = new ConcurrentHashMap<String, MemoryCacheKey[]>();
+
+	/** ѻbitmapı߳ĿСĶٱʱŵõĿСbitmap*/
+	private volatile float maxDerivedSizeRatio = DEFAULT_MAX_DERIVED_SIZE_RATIO;
+
+	/** ̭ԣά˳*/
+	private final EvictionPolicy policy;
+
+	/** ̭Լsize*/
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/** getʱд룬ʱطţдµļ¼ḲǾɼ¼ֻʧ˳ľȣ*/
+	private final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+	private final AtomicLong readBufferWriteCount = new AtomicLong();
+	/** ѻطŵλãֻevictionLock޸*/
+	private volatile long readBufferReadCount;
+
+	/** д*/
+	private final AtomicLong hitCount = new AtomicLong();
+	/** δд*/
+	private final AtomicLong missCount = new AtomicLong();
+	/** ̭Ĵ*/
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/** bitmapʱļ*/
+	private volatile EvictionListener evictionListener;
+
+	public LruMemoryCache(Context context, long maxSize){
+		this(context, maxSize, Policy.LRU);
+	}
+
+	public LruMemoryCache(Context context, long maxSize, Policy policy){
+		this(context, maxSize, policy, BYTE_COUNT_WEIGHER);
+	}
+
+	/**
+	 * @param context
+	 * @param maxSize ռڴweigherĵλͬСڵ0ʱʹӦڴ1/8
+	 * @param policy ̭
+	 * @param weigher ÿbitmapĴС
+	 */
+	public LruMemoryCache(Context context, long maxSize, Policy policy, Weigher weigher){
+		if(null == weigher){
+			throw new NullPointerException("weigher == null");
+		}
 		int memClass = ((ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass();
 		if(maxSize <= 0){
 			//ʹϵͳӦõ1/8ڴСΪǿõڴ
-			this.maxSize = (int) (Runtime.getRuntime().maxMemory() / 8);
+			this.maxSize = Runtime.getRuntime().maxMemory() / 8;
 		}else{
 			this.maxSize = maxSize;
 		}
-		
+		this.weigher = weigher;
+
 		Log.e(TAG, "ActivityManager--memClass->" + memClass);
 		Log.e(TAG, "RunTime--maxSize->" + maxSize);
-		
-		/*ʼLinkedHashMap
-		 * һinitialCapacityָmapʼ
-		 * ڶloadFactor,ָmapӣǰmapĴСǣinitialCapacity * loadFactorСĿռ䣻
-		 * accessOrderָȡ˳falseĻ˳true˳
-		 * עͨԴԿloadFactorѾûˣΪĬֻʹֵΪ3/4
-		 */
-		map = new LinkedHashMap<String, Bitmap>(0, 0.75f, true);
+
+		map = new ConcurrentHashMap<MemoryCacheKey, Node>(16, 0.75f, 4);
+		this.currentMaxSize = this.maxSize;
+		this.policy = policy == Policy.W_TINY_LFU ? new WindowTinyLfuPolicy(this.maxSize) : new LruPolicy();
 	}
-	
+
 	/**
-	 * keybitmapڻУ򷵻ظbitmapbitmapƶеͷ
+	 * keybitmapڻУ򷵻ظbitmap¼ηʣԺ󽫸bitmapƶеβ
 	 * keybitmapڻУ򷵻null
+	 * <p/>
+	 * ãصbitmap̭ܱûգҪbitmapʱʹ{@link #acquire(MemoryCacheKey)}
+	 * ÷ȴκ
 	 * @param key
 	 * @return
 	 */
-	public final Bitmap get(String key){
-		
-		if(TextUtils.isEmpty(key)){
+	public final Bitmap get(MemoryCacheKey key){
+		Node node = getNode(key);
+		return null == node ? null : node.value.getBitmap();
+	}
+
+	/**
+	 * ͬ{@link #get(MemoryCacheKey)}صԴΪһãʹ{@link BitmapResource#release()}
+	 * @param key
+	 * @return keyڣԴǡѱͷʱnull
+	 */
+	public final BitmapResource acquire(MemoryCacheKey key){
+		Node node = getNode(key);
+		if(null == node || !node.value.acquire()){
+			return null;
+		}
+		return node.value;
+	}
+
+	private Node getNode(MemoryCacheKey key){
+		if(null == key){
 			throw new NullPointerException("key == null");
 		}
-		
-		synchronized (this) {
-			return map.get(key);
+
+		Node node = map.get(key);
+		if(null == node){
+			missCount.incrementAndGet();
+			return null;
 		}
-		
+		hitCount.incrementAndGet();
+		afterRead(node);
+		return node;
 	}
-	
+
 	/**
-	 * bitmapkey棬bitmapᱻӵбͷkeyѴڣ滻Ϊǰbitmapƶͷ
+	 * bitmapkeyĻ棬bitmapᱻӵβkeyѴڣ滻Ϊǰbitmapƶβ
+	 * ΪvalueһԼã߳еòӰ
 	 * @param key
 	 * @param value
-	 * @return
+	 * @return false valueѱͷţδ
 	 */
-	public final boolean put(String key, Bitmap value){
-		if(TextUtils.isEmpty(key) || null == value){
+	public final boolean put(MemoryCacheKey key, BitmapResource value){
+		if(null == key || null == value){
 			throw new NullPointerException("key == null || value == null");
 		}
-		
-		synchronized (this) {
-			this.size = this.size + this.sizeOf(key, value);
-			//ӦkeyѴڣ᷵ԭkeyӦbitmap󣬲򷵻null
-			Bitmap previous = map.put(key, value);
+		if(!value.acquire()){
+			return false;
+		}
+
+		Node node = new Node(key, value, weigh(key, value));
+		//ӦkeyѴڣ᷵ԭkeyӦĽڵ㣬򷵻null
+		Node previous = map.put(key, node);
+
+		List<Node> evicted;
+		evictionLock.lock();
+		try {
+			drainReadBuffer();
 			if(null != previous){
-				//ԭѴڸkeyǰĴСӦǵǰСȥԭkeyӦbitmapĴС
-				//ΪputȥvalueBitmapḲǵԭkeyӦbitmap
-				this.size = this.size - this.sizeOf(key, previous);
+				//ԭĽڵѱ滻ӷ˳ƳȥС
+				unlink(previous);
 			}
+			//ڻȡ֮ǰýڵѱremoveٴα滻ټ˳
+			if(map.get(key) == node){
+				policy.onAdd(node);
+				this.size = this.size + node.size;
+				addToSizeIndex(key);
+			}
+			evicted = evict(currentMaxSize);
+		} finally {
+			evictionLock.unlock();
 		}
-		
-		this.trimToSize(maxSize);
-		
+
+		if(null != previous){
+			if(previous.value != value){
+				notifyEvicted(previous);
+			}
+			previous.value.release();
+		}
+		notifyAndRelease(evicted);
 		return true;
 	}
-	
+
 	/**
-	 * Ƴδʵbitmap֪ʣµbitmapռڴ治maxSize
-	 * @param maxSize ڴ-1л
+	 * ̭Ƴbitmapֱʣµbitmapռڴ治maxSizeevictionLockµ
+	 * @param maxSize ڴ-1л
+	 * @return ƳĽڵ㣬ûƳκνڵʱnullӦͷ֪֮ͨ
 	 */
-	private void trimToSize(int maxSize){
-		while (true) {
-			String key;
-			Bitmap value;
-			synchronized (this) {
-				if(this.size < 0 || (map.isEmpty() && this.size != 0)){
-					throw new IllegalStateException(getClass().getName() + ".sizeOf() is reporting inconsistent results!");
-				}
-				if(this.size <= maxSize || map.isEmpty()){
-					break;
-				}
-				
-				Map.Entry<String, Bitmap> toEvict = map.entrySet().iterator().next();
-				if(null == toEvict){
-					break;
+	private List<Node> evict(long maxSize){
+		List<Node> evicted = null;
+		while (this.size > maxSize) {
+			Node toEvict = policy.selectVictim();
+			if(null == toEvict){
+				if(this.size != 0){
+					throw new IllegalStateException(getClass().getName() + ".weigher is reporting inconsistent results!");
 				}
-				key = toEvict.getKey();
-				value = toEvict.getValue();
-				map.remove(key);
-				this.size = this.size - this.sizeOf(key, value);
+				break;
 			}
-			
+			boolean removed = map.remove(toEvict.key, toEvict);
+			unlink(toEvict);
+			if(!removed){
+				//ڵѱ߳滻Ƴɸ̸֪߳ͨ
+				continue;
+			}
+			evictionCount.incrementAndGet();
+			if(null == evicted){
+				evicted = new ArrayList<Node>();
+			}
+			evicted.add(toEvict);
 		}
+		policy.onEvictionFinished();
+		return evicted;
 	}
-	
+
 	/**
 	 * дkeyƳkeyӦbitmap
 	 * @param key
+	 * @return ƳԴеתߣʹ{@link BitmapResource#release()}
+	 */
+	public final BitmapResource remove(MemoryCacheKey key){
+		if(null == key) {
+			throw new NullPointerException("key == null");
+		}
+
+		Node previous = map.remove(key);
+		if(null == previous){
+			return null;
+		}
+		evictionLock.lock();
+		try {
+			unlink(previous);
+		} finally {
+			evictionLock.unlock();
+		}
+		return previous.value;
+	}
+
+	/**
+	 * жϻǷkey¼ʣҲͳ
+	 * @param key
 	 * @return
 	 */
-	public final Bitmap remove(String key){
-		if (TextUtils.isEmpty(key)) {
+	public final boolean containsKey(MemoryCacheKey key){
+		if(null == key){
 			throw new NullPointerException("key == null");
 		}
-		
-		synchronized (this) {
-			Bitmap previous = map.remove(key);
-			if(null != previous){
-				this.size = this.size - this.sizeOf(key, previous);
+		return map.containsKey(key);
+	}
+
+	/**
+	 * ûkeyӦߴbitmapʱͬһuriѻĽϴߴbitmapõkeyҪbitmap½룺
+	 * <ul>
+	 * <li>ѻbitmapkeyҪĴʱֱӷظbitmap浽key£ͬһbitmapkeyã</li>
+	 * <li>СպøkeyĿߣ浽key²أѻbitmapĿС̫ࣨ{@link #setMaxDerivedSizeRatio(float)}ʱʹá</li>
+	 * </ul>
+	 * ŻµbitmapӦڹ߳е
+	 * @param key ҪѹͼƬkeyѹͼƬkeyֱӷnull
+	 * @return ûпõĽϴߴʱnullصԴΪһãʹ{@link BitmapResource#release()}
+	 */
+	public final BitmapResource getFromLargerVariant(MemoryCacheKey key){
+		if(null == key){
+			throw new NullPointerException("key == null");
+		}
+		int targetWidth = key.getWidth();
+		int targetHeight = key.getHeight();
+		float maxRatio = maxDerivedSizeRatio;
+		MemoryCacheKey[] variants = sizesForUri.get(key.getUri());
+		if(targetWidth <= 0 || targetHeight <= 0 || maxRatio < 1f || null == variants){
+			return null;
+		}
+
+		Node best = null;
+		float bestScale = 0;
+		for (MemoryCacheKey variant : variants) {
+			if(variant.equals(key) || !coversTargetSize(variant, targetWidth, targetHeight)){
+				continue;
+			}
+			Node node = map.get(variant);
+			if(null == node){
+				continue;
 			}
-			return previous;
+			Bitmap bitmap = node.value.getBitmap();
+			//СպøĿҪıڵ1ʾҪС
+			float scale = Math.max((float) targetWidth / bitmap.getWidth(), (float) targetHeight / bitmap.getHeight());
+			if(scale * maxRatio < 1f){
+				continue;
+			}
+			//ȡСģűӽ1ģ
+			if(null == best || scale > bestScale){
+				best = node;
+				bestScale = scale;
+			}
+		}
+		//ڼãԴbitmap̭
+		if(null == best || !best.value.acquire()){
+			return null;
 		}
+		afterRead(best);
+		hitCount.incrementAndGet();
+		Bitmap source = best.value.getBitmap();
+		int width = Math.max(1, Math.round(source.getWidth() * bestScale));
+		int height = Math.max(1, Math.round(source.getHeight() * bestScale));
+		//߲ʱcreateScaledBitmap᷵ԴbitmapٰװһԴ
+		if(bestScale >= 1f || (width == source.getWidth() && height == source.getHeight())){
+			return best.value;
+		}
+		BitmapResource derived;
+		long scaleStartTime = SystemClock.uptimeMillis();
+		try {
+			Bitmap scaled = Bitmap.createScaledBitmap(source, width, height, true);
+			//µõŽֻһΣ۰ʱ
+			derived = new BitmapResource(scaled, best.value.getReleaser(), SystemClock.uptimeMillis() - scaleStartTime);
+		} finally {
+			best.value.release();
+		}
+		put(key, derived);
+		return derived;
 	}
-	
-	public Collection<String> keys(){
-		synchronized (this) {
-			return new HashSet<String>(map.keySet());
+
+	/**
+	 * ѻbitmapı߳ĿСĶٱʱ{@link #getFromLargerVariant(MemoryCacheKey)}ʹ
+	 * @param maxDerivedSizeRatio С1ʱٴӽϴߴõbitmap
+	 */
+	public void setMaxDerivedSizeRatio(float maxDerivedSizeRatio){
+		this.maxDerivedSizeRatio = maxDerivedSizeRatio;
+	}
+
+	/**
+	 * @return variantĿǷ񶼲СtargetWidth x targetHeightѹͼƬkeyԭͼ
+	 */
+	private static boolean coversTargetSize(MemoryCacheKey variant, int targetWidth, int targetHeight){
+		if(variant.getWidth() == 0 && variant.getHeight() == 0){
+			return true;
 		}
+		return variant.getWidth() >= targetWidth && variant.getHeight() >= targetHeight;
 	}
-	
+
+	/** keyurievictionLockµ*/
+	private void addToSizeIndex(MemoryCacheKey key){
+		MemoryCacheKey[] keys = sizesForUri.get(key.getUri());
+		MemoryCacheKey[] newKeys;
+		if(null == keys){
+			newKeys = new MemoryCacheKey[] { key };
+		}else{
+			for (MemoryCacheKey k : keys) {
+				if(k.equals(key)){
+					return;
+				}
+			}
+			newKeys = new MemoryCacheKey[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, keys.length);
+			newKeys[keys.length] = key;
+		}
+		sizesForUri.put(key.getUri(), newKeys);
+	}
+
+	/** keyuriƳevictionLockµ*/
+	private void removeFromSizeIndex(MemoryCacheKey key){
+		MemoryCacheKey[] keys = sizesForUri.get(key.getUri());
+		if(null == keys){
+			return;
+		}
+		int index = -1;
+		for (int i = 0; i < keys.length; i++) {
+			if(keys[i].equals(key)){
+				index = i;
+				break;
+			}
+		}
+		if(index < 0){
+			return;
+		}
+		if(keys.length == 1){
+			sizesForUri.remove(key.getUri());
+			return;
+		}
+		MemoryCacheKey[] newKeys = new MemoryCacheKey[keys.length - 1];
+		System.arraycopy(keys, 0, newKeys, 0, index);
+		System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+		sizesForUri.put(key.getUri(), newKeys);
+	}
+
+	/**
+	 * ǰЧڴޣ̭޵bitmap
+	 * @param multiplier ڹʱָmaxSizeı0~1Ϊ1ʱָԭޣΪ0ʱջ
+	 */
+	public void setSizeMultiplier(float multiplier){
+		if(multiplier < 0 || multiplier > 1){
+			throw new IllegalArgumentException("multiplier must be between 0 and 1");
+		}
+		List<Node> evicted;
+		evictionLock.lock();
+		try {
+			//Ϊ0ʱΪ-1֤
+			currentMaxSize = multiplier == 0 ? -1 : (long) (maxSize * (double) multiplier);
+			drainReadBuffer();
+			evicted = evict(currentMaxSize);
+		} finally {
+			evictionLock.unlock();
+		}
+		notifyAndRelease(evicted);
+	}
+
+	/**
+	 * ̭Ƴbitmapֱʣµbitmapռڴ治maxSizeı䵱ǰЧ
+	 * @param maxSize ڴ-1л
+	 */
+	public void trimToSize(long maxSize){
+		List<Node> evicted;
+		evictionLock.lock();
+		try {
+			drainReadBuffer();
+			evicted = evict(maxSize);
+		} finally {
+			evictionLock.unlock();
+		}
+		notifyAndRelease(evicted);
+	}
+
+	/** @return ǰռڴ*/
+	public long size(){
+		evictionLock.lock();
+		try {
+			return size;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/** @return ʱָڴ*/
+	public long maxSize(){
+		return maxSize;
+	}
+
+	/** @return ǰЧڴޣڴʱС{@link #maxSize()}*/
+	public long currentMaxSize(){
+		return currentMaxSize;
+	}
+
+	public Collection<MemoryCacheKey> keys(){
+		return new HashSet<MemoryCacheKey>(map.keySet());
+	}
+
 	/**
 	 * ջ
 	 */
 	public void clear(){
-		this.trimToSize(-1);
+		List<Node> removed = new ArrayList<Node>();
+		evictionLock.lock();
+		try {
+			//putСδ˳ĽڵҲһmapƳput̻߳ȡֽᷢڵѲmap
+			Iterator<Node> it = map.values().iterator();
+			while (it.hasNext()) {
+				Node node = it.next();
+				//ֻ֪ͨȷʵɱ߳ƳĽڵ㣬߳滻Ľڵɸ̸֪߳ͨ
+				if(map.remove(node.key, node)){
+					removed.add(node);
+				}
+				unlink(node);
+			}
+			drainReadBuffer();
+		} finally {
+			evictionLock.unlock();
+		}
+		notifyAndRelease(removed);
 	}
-	
+
 	/**
-	 * bitampĴС
-	 * @param key
-	 * @param value
-	 * @return
+	 * ûbitmap̭ͬһkeybitmap滻ջ棩ʱļͨ{@link #remove(MemoryCacheKey)}Ƴbitmap֪ͨ
+	 * @param listener Ϊnullʱȡ
 	 */
-	private int sizeOf(String key, Bitmap value){
-		return value.getRowBytes() * value.getHeight();
+	public void setEvictionListener(EvictionListener listener){
+		this.evictionListener = listener;
+	}
+
+	private void notifyEvicted(Node node){
+		EvictionListener listener = evictionListener;
+		if(null != listener){
+			listener.onEvicted(node.key, node.value);
+		}
+	}
+
+	/** ֪ͨͷŻе*/
+	private void notifyAndRelease(List<Node> nodes){
+		if(null == nodes){
+			return;
+		}
+		for (Node node : nodes) {
+			notifyEvicted(node);
+			node.value.release();
+		}
 	}
 	
-	public synchronized final String toString(){
-		return String.format("LruMemoryCache[maxSize=%d]", maxSize);
+	/**
+	 * ¼һηʣѹʱԻطţȡֱӷأɳ̸߳ط
+	 * @param node
+	 */
+	private void afterRead(Node node){
+		long writeCount = readBufferWriteCount.getAndIncrement();
+		readBuffer.set((int) (writeCount & READ_BUFFER_MASK), node);
+		if(writeCount + 1 - readBufferReadCount >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()){
+			try {
+				drainReadBuffer();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * м¼ķʻطŵ˳УevictionLockµ
+	 */
+	private void drainReadBuffer(){
+		long writeCount = readBufferWriteCount.get();
+		long readCount = readBufferReadCount;
+		if(writeCount - readCount > READ_BUFFER_SIZE){
+			//ǵļ¼Ѿʧֻطһ
+			readCount = writeCount - READ_BUFFER_SIZE;
+		}
+		for (; readCount < writeCount; readCount++) {
+			Node node = readBuffer.getAndSet((int) (readCount & READ_BUFFER_MASK), null);
+			if(null != node && node.isLinked()){
+				policy.onAccess(node);
+			}
+		}
+		readBufferReadCount = readCount;
+	}
+
+	/** ڵ̭ƳȥСڵ㲻ʱʲôҲevictionLockµ*/
+	private void unlink(Node node){
+		if(!node.isLinked()){
+			return;
+		}
+		policy.onRemove(node);
+		this.size = this.size - node.size;
+		//keyûжӦĽڵ㣨Ǳͬһkey½ڵ滻ʱuriƳ
+		if(!map.containsKey(node.key)){
+			removeFromSizeIndex(node.key);
+		}
+	}
+
+	private long weigh(MemoryCacheKey key, BitmapResource value){
+		long weight = weigher.weigh(key, value);
+		if(weight < 0){
+			throw new IllegalStateException("Negative weight: " + key + "=" + weight);
+		}
+		return weight;
+	}
+
+	/** @return д*/
+	public long getHitCount(){
+		return hitCount.get();
+	}
+
+	/** @return δд*/
+	public long getMissCount(){
+		return missCount.get();
+	}
+
+	/** @return ̭Ĵ*/
+	public long getEvictionCount(){
+		return evictionCount.get();
+	}
+
+	/** @return ʣûκʱ1*/
+	public double hitRate(){
+		long hits = hitCount.get();
+		long requests = hits + missCount.get();
+		return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+
+	/** ͳƣڱȽϲ̭ͬ*/
+	public void resetStats(){
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+
+	public final String toString(){
+		return String.format("LruMemoryCache[maxSize=%d,currentMaxSize=%d,hits=%d,misses=%d,hitRate=%.2f]", maxSize, currentMaxSize, hitCount.get(), missCount.get(), hitRate());
+	}
+
+	/** 涪bitmapʱļڶbitmap߳лصصʱκλ*/
+	public static interface EvictionListener {
+		/**
+		 * @param key key
+		 * @param value Դصغ󻺴ͷԼãҪʹʱӦڻص{@link BitmapResource#acquire()}
+		 */
+		void onEvicted(MemoryCacheKey key, BitmapResource value);
+	}
+
+	/**
+	 * bitmapڻеĴСͬһbitmapμĽͬ
+	 * <p/>
+	 * ֽ⣬ҲԽ{@link BitmapResource#getLoadTimeMillis()}µõbitmapĴۼ
+	 */
+	public static interface Weigher {
+		/**
+		 * @param key
+		 * @param value
+		 * @return СΪ
+		 */
+		long weigh(MemoryCacheKey key, BitmapResource value);
+	}
+
+	/** bitmapʵռõֽСAPI 19ϸõbitmapܱݴ󣬰ֽ*/
+	public static final Weigher BYTE_COUNT_WEIGHER = new Weigher() {
+		@Override
+		public long weigh(MemoryCacheKey key, BitmapResource value) {
+			Bitmap bitmap = value.getBitmap();
+			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+				return bitmap.getAllocationByteCount();
+			}
+			return (long) bitmap.getRowBytes() * bitmap.getHeight();
+		}
+	};
+
+	/** ̭*/
+	public static enum Policy {
+		/** ʹã̭δʵbitmap*/
+		LRU,
+		/** W-TinyLFUƵʾbitmapܷ뻺棬һԵĻȵbitmap*/
+		W_TINY_LFU
+	}
+
+	/**
+	 * ڵ㣬valuesizeٸı䣻prevnextqueueֻevictionLock·
+	 */
+	static final class Node {
+		final MemoryCacheKey key;
+		final BitmapResource value;
+		final long size;
+		Node prev;
+		Node next;
+		/** ڵڵķ˳УκζʱΪnull*/
+		AccessOrderQueue queue;
+
+		Node(MemoryCacheKey key, BitmapResource value, long size){
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+
+		boolean isLinked(){
+			return null != queue;
+		}
 	}
 }
@@ -0,0 +1,36 @@
+package com.zs.imagemanager;
+
+import com.zs.imagemanager.LruMemoryCache.Node;
+
+/**
+ * ʹ̭ԣ̭δʵĽڵ
+ * @author zhangshuo
+ */
+final class LruPolicy implements EvictionPolicy {
+
+	private final AccessOrderQueue queue = new AccessOrderQueue();
+	
+	@Override
+	public void onAdd(Node node) {
+		queue.linkLast(node);
+	}
+
+	@Override
+	public void onAccess(Node node) {
+		queue.moveToLast(node);
+	}
+
+	@Override
+	public void onRemove(Node node) {
+		queue.unlink(node);
+	}
+
+	@Override
+	public Node selectVictim() {
+		return queue.peekFirst();
+	}
+
+	@Override
+	public void onEvictionFinished() {
+	}
+}
@@ -0,0 +1,119 @@
+package com.zs.imagemanager;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ڴ滺keyͼƬuri + Ŀ
+ * <p/>
+ * ɱ󣬿ѹһintУhashCodeڴʱãuriString.intern()һֱVMַУ
+ * ͬһuriõkeyͬһuri󣬱ȽʱֻͨȽá
+ * ͨ{@link #obtain(String, int, int)}ȡkeyᱻãͬһuriͬһٴλȡʱᴴ¶
+ * getViewвѯڴ滺治ҪƴַҲҪ¼urihash
+ * @author zhangshuo
+ */
+public final class MemoryCacheKey {
+
+	private static final String URI_AND_SIZE_SEPARATOR = "_";
+	private static final String WIDTH_AND_HEIGHT_SEPARATOR = "x";
+	
+	/** õkeyʱգ*/
+	private static final int MAX_INTERNED_URIS = 1024;
+	
+	/** õkeyÿuriӦпߵkey*/
+	private static final ConcurrentHashMap<String, MemoryCacheKey[]> INTERNED_KEYS = new ConcurrentHashMap<String, MemoryCacheKey[]>();
+	
+	private final String uri;
+	/** 16λΪ16λΪ*/
+	private final int packedSize;
+	private final int hash;
+	
+	private MemoryCacheKey(String uri, int width, int height){
+		this.uri = uri;
+		this.packedSize = pack(width, height);
+		this.hash = 31 * this.uri.hashCode() + packedSize;
+	}
+	
+	/**
+	 * ȡuriĿ߶ӦkeyѴʱֱӷأ¶
+	 * @param uri ͼƬuri
+	 * @param width ĿѹͼƬʱΪ0
+	 * @param height ĿߣѹͼƬʱΪ0
+	 * @return
+	 */
+	public static MemoryCacheKey obtain(String uri, int width, int height){
+		if(null == uri){
+			throw new NullPointerException("uri == null");
+		}
+		int packedSize = pack(width, height);
+		MemoryCacheKey[] keys = INTERNED_KEYS.get(uri);
+		if(null != keys){
+			for (MemoryCacheKey key : keys) {
+				if(key.packedSize == packedSize){
+					return key;
+				}
+			}
+		}
+		
+		//uriѸõkeyͬһuri
+		MemoryCacheKey key = new MemoryCacheKey(null == keys ? uri : keys[0].uri, width, height);
+		if(INTERNED_KEYS.size() >= MAX_INTERNED_URIS){
+			INTERNED_KEYS.clear();
+		}
+		//滻ҪʱܶʧһkeyֻӰ츴ãӰȷ
+		MemoryCacheKey[] newKeys;
+		if(null == keys){
+			newKeys = new MemoryCacheKey[] { key };
+		}else{
+			newKeys = new MemoryCacheKey[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, keys.length);
+			newKeys[keys.length] = key;
+		}
+		INTERNED_KEYS.put(uri, newKeys);
+		return key;
+	}
+	
+	public String getUri(){
+		return uri;
+	}
+	
+	public int getWidth(){
+		return packedSize >>> 16;
+	}
+	
+	public int getHeight(){
+		return packedSize & 0xffff;
+	}
+	
+	@Override
+	public int hashCode(){
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object o){
+		if(this == o){
+			return true;
+		}
+		if(!(o instanceof MemoryCacheKey)){
+			return false;
+		}
+		MemoryCacheKey other = (MemoryCacheKey) o;
+		//õkeyuriͬʱҪַȽ
+		return packedSize == other.packedSize && hash == other.hash && (uri == other.uri || uri.equals(other.uri));
+	}
+	
+	/**
+	 * @return ѹͼƬʱΪuriΪ<b>[imageUri]_[width]x[height]</b>
+	 */
+	@Override
+	public String toString(){
+		if(packedSize == 0){
+			return uri;
+		}
+		return new StringBuilder(uri).append(URI_AND_SIZE_SEPARATOR).append(getWidth()).append(WIDTH_AND_HEIGHT_SEPARATOR).append(getHeight()).toString();
+	}
+	
+	private static int pack(int width, int height){
+		return (Math.min(Math.max(width, 0), 0xffff) << 16) | Math.min(Math.max(height, 0), 0xffff);
+	}
+}
@@ -0,0 +1,177 @@
+package com.zs.imagemanager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.zs.imagemanager.decoder.DecodeBudget;
+
+/**
+ * ڴѹ
+ * <p/>
+ * ϵͳ{@link #onTrimMemory(int)}ļ𣬰ڴ滺桢bitmapóءݻ޼ڴԤ㣬
+ * ͷų޵ڴ棻ԽرıԽСһʱûյڴѹ
+ * ٴʾͼƬʱָԭޡ
+ * <p/>
+ * API 14{@link ImageLoader}Զע᣻İ汾ActivityonLowMemoryе{@link ImageLoader#trimMemory(int)}
+ * @author zhangshuo
+ */
+public class MemoryTrimmer implements ComponentCallbacks2 {
+
+	private static final String TAG = MemoryTrimmer.class.getSimpleName();
+	
+	/** һڴѹ֮ûµѹŻָޣλ*/
+	private static final long RESTORE_DELAY_MILLIS = 30 * 1000;
+	/** ̼ɱⱣС豸ᷴڴѹ޽Ϊ0֮ÿʾ½*/
+	static final float MIN_MULTIPLIER = 0.1f;
+	
+	private final LruMemoryCache memoryCache;
+	private final LruBitmapPool bitmapPool;
+	private final EncodedMemoryCache encodedCache;
+	private final DecodeBudget decodeBudget;
+	
+	/** ǰЧı1ʾûеͣthis޸ģ{@link #claimRestore()}ȡ*/
+	private volatile float currentMultiplier = 1f;
+	/** һε޵ʱ*/
+	private volatile long lastTrimTime;
+	/** {@link #claimRestore()}true֮{@link #restoreIfRelieved()}ִ֮ǰΪtrueظύ*/
+	private final AtomicBoolean restorePending = new AtomicBoolean();
+	
+	/**
+	 * @param memoryCache
+	 * @param bitmapPool null-ok
+	 * @param encodedCache null-ok
+	 * @param decodeBudget null-ok
+	 */
+	public MemoryTrimmer(LruMemoryCache memoryCache, LruBitmapPool bitmapPool, EncodedMemoryCache encodedCache, DecodeBudget decodeBudget){
+		this.memoryCache = memoryCache;
+		this.bitmapPool = bitmapPool;
+		this.encodedCache = encodedCache;
+		this.decodeBudget = decodeBudget;
+	}
+	
+	@Override
+	public void onTrimMemory(int level){
+		trim(multiplierForLevel(level));
+	}
+	
+	@Override
+	public void onLowMemory(){
+		trim(MIN_MULTIPLIER);
+	}
+	
+	@Override
+	public void onConfigurationChanged(Configuration newConfig){
+	}
+	
+	/**
+	 * ʱOOMصʱڴѹ֮ɵһ
+	 */
+	public void onOutOfMemory(){
+		trim(multiplierForLevel(TRIM_MEMORY_RUNNING_CRITICAL));
+	}
+	
+	/**
+	 * ޣȵǰʱκ£ѹޣ
+	 * @param multiplier 0~1
+	 */
+	public synchronized void trim(float multiplier){
+		lastTrimTime = SystemClock.uptimeMillis();
+		if(multiplier >= currentMultiplier){
+			return;
+		}
+		Log.d(TAG, "trim-->" + multiplier);
+		currentMultiplier = multiplier;
+		apply(multiplier);
+	}
+	
+	/**
+	 * ж{@link #restoreIfRelieved()}ǷޣʾͼƬʱUI̵߳á
+	 * trueʱ߱ں̵̨߳{@link #restoreIfRelieved()}ָҪȡڴ滺̭
+	 * ڴ֮ǰٴε÷false
+	 * @return
+	 */
+	public boolean claimRestore(){
+		float multiplier = currentMultiplier;
+		if(multiplier >= 1f){
+			return false;
+		}
+		if(multiplier >= MIN_MULTIPLIER && SystemClock.uptimeMillis() - lastTrimTime < RESTORE_DELAY_MILLIS){
+			return false;
+		}
+		return restorePending.compareAndSet(false, true);
+	}
+	
+	/**
+	 * һڴѹѹȥ㹻ʱʱָԭޣ̨ʱյޣʾͼƬʱָ{@link #MIN_MULTIPLIER}
+	 * ȴѹȥȡڴ滺̭ҪUI̵߳
+	 */
+	public synchronized void restoreIfRelieved(){
+		restorePending.set(false);
+		if(currentMultiplier >= 1f){
+			return;
+		}
+		if(SystemClock.uptimeMillis() - lastTrimTime >= RESTORE_DELAY_MILLIS){
+			restore();
+		}else if(currentMultiplier < MIN_MULTIPLIER){
+			Log.d(TAG, "restore-->" + MIN_MULTIPLIER);
+			currentMultiplier = MIN_MULTIPLIER;
+			apply(MIN_MULTIPLIER);
+		}
+	}
+	
+	/**
+	 * ָԭ
+	 */
+	public synchronized void restore(){
+		Log.d(TAG, "restore");
+		currentMultiplier = 1f;
+		apply(1f);
+	}
+	
+	/** @return ǰЧı1ʾûе*/
+	public synchronized float getCurrentMultiplier(){
+		return currentMultiplier;
+	}
+	
+	private void apply(float multiplier){
+		memoryCache.setSizeMultiplier(multiplier);
+		if(null != bitmapPool){
+			bitmapPool.setSizeMultiplier(multiplier);
+		}
+		if(null != encodedCache){
+			encodedCache.setSizeMultiplier(multiplier);
+		}
+		if(null != decodeBudget){
+			decodeBudget.setSizeMultiplier(multiplier);
+		}
+	}
+	
+	/**
+	 * @param level {@link ComponentCallbacks2}еTRIM_MEMORY_*
+	 * @return ü¸ޱı
+	 */
+	static float multiplierForLevel(int level){
+		if(level >= TRIM_MEMORY_COMPLETE){
+			//̼ɱͷȫ
+			return 0f;
+		}else if(level >= TRIM_MEMORY_MODERATE){
+			return MIN_MULTIPLIER;
+		}else if(level >= TRIM_MEMORY_BACKGROUND){
+			return 0.25f;
+		}else if(level >= TRIM_MEMORY_UI_HIDDEN){
+			//治ɼʱԿʾͬͼƬһ
+			return 0.5f;
+		}else if(level >= TRIM_MEMORY_RUNNING_CRITICAL){
+			return 0.25f;
+		}else if(level >= TRIM_MEMORY_RUNNING_LOW){
+			return 0.5f;
+		}else if(level >= TRIM_MEMORY_RUNNING_MODERATE){
+			return 0.75f;
+		}
+		return 1f;
+	}
+}
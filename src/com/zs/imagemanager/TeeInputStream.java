@@ -0,0 +1,127 @@
+package com.zs.imagemanager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ߶߱
+ * <p/>
+ * ͼƬʱװдSDCardͬʱ浽ڴУһֽʱıڴУ
+ * ֱӷ{@link EncodedMemoryCache}룬ҪٴSDCardȡһдļ
+ * ݳʱֹͣ棬߻˵SDCardȡ
+ * @author zhangshuo
+ */
+final class TeeInputStream extends FilterInputStream {
+
+	/** ֪ݳʱĳʼ*/
+	private static final int DEFAULT_CAPACITY = 32 * 1024;
+
+	/** ౣֽ*/
+	private final int maxSize;
+
+	/** ѱݣ޺Ϊnull*/
+	private ByteBuffer buffer;
+
+	/** ǷѶĩβ*/
+	private boolean eof;
+
+	/**
+	 * @param in װavailable()Ϊܳʱ{@link ContentLengthInputStream}һη㹻ڴ
+	 * @param maxSize ౣֽ
+	 */
+	TeeInputStream(InputStream in, int maxSize){
+		super(in);
+		this.maxSize = maxSize;
+		int expected;
+		try {
+			expected = in.available();
+		} catch (IOException e) {
+			expected = 0;
+		}
+		if(expected <= maxSize){
+			buffer = ByteBuffer.allocateDirect(expected > 0 ? expected : Math.min(DEFAULT_CAPACITY, maxSize));
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if(b == -1){
+			eof = true;
+		}else{
+			capture(new byte[]{(byte) b}, 0, 1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int count = in.read(b, off, len);
+		if(count == -1){
+			eof = true;
+		}else if(count > 0){
+			capture(b, off, count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		//޷
+		buffer = null;
+		return in.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	private void capture(byte[] b, int off, int len){
+		if(null == buffer){
+			return;
+		}
+		if(buffer.remaining() < len){
+			int needed = buffer.position() + len;
+			if(needed > maxSize){
+				buffer = null;
+				return;
+			}
+			ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(maxSize, Math.max(buffer.capacity() * 2, needed)));
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+		buffer.put(b, off, len);
+	}
+
+	/**
+	 * @return ĩβʱȫݣpositionΪ0capacitylimitΪݳȣδݳʱnull
+	 */
+	ByteBuffer getData(){
+		if(!eof || null == buffer){
+			return null;
+		}
+		ByteBuffer data = buffer.duplicate();
+		data.flip();
+		if(data.capacity() != data.limit()){
+			//ʵʳȸƣݻ水capacityռõڴ
+			ByteBuffer exact = ByteBuffer.allocateDirect(data.limit());
+			exact.put(data);
+			exact.flip();
+			return exact;
+		}
+		return data;
+	}
+}
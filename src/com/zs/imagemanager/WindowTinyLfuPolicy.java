@@ -0,0 +1,137 @@
+package com.zs.imagemanager;
+
+import com.zs.imagemanager.LruMemoryCache.Node;
+
+/**
+ * W-TinyLFṶ
+ * <p/>
+ * Ϊwindowռ1%mainΪprobationprotectedΣprotectedռ80%
+ * <ul>
+ * <li>½ڵȽ봰ʱδʵĽڵ㱻probationΪѡߡ</li>
+ * <li>probationеĽڵٴαʱprotectedprotectedʱδʵĽڵ㽵probationںѡ֮ǰ</li>
+ * <li>Ҫ̭ʱ{@link FrequencySketch}ȽϺѡߺprobation׽ڵ㣨ܺߣķƵʣƵʵ͵һ̭
+ * һ̭µĺѡ߳Ϊͨڵ㡣</li>
+ * </ul>
+ * һοٻĴֻһεͼƬֻڴprobation໥̭ʹõȵͼƬ
+ * <p/>
+ * עʵֲοGitHubԴĿCaffeine
+ * @author zhangshuo
+ */
+final class WindowTinyLfuPolicy implements EvictionPolicy {
+
+	/** ռİٷֱ*/
+	private static final int WINDOW_PERCENT = 1;
+	/** protectedռİٷֱ*/
+	private static final int PROTECTED_PERCENT = 80;
+	/** ڹԪظƽͼƬС*/
+	private static final int ESTIMATED_ENTRY_SIZE = 64 * 1024;
+	
+	private final AccessOrderQueue window = new AccessOrderQueue();
+	private final AccessOrderQueue probation = new AccessOrderQueue();
+	private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+	
+	private final FrequencySketch sketch;
+	
+	private final long windowMaxSize;
+	private final long protectedMaxSize;
+	
+	/** ̭probationȴܺ߱ȽϵĵһѡߣĽڵ㶼Ǻѡߣÿ̭*/
+	private Node candidate;
+	
+	WindowTinyLfuPolicy(long maxSize){
+		windowMaxSize = maxSize * WINDOW_PERCENT / 100;
+		protectedMaxSize = (maxSize - windowMaxSize) * PROTECTED_PERCENT / 100;
+		sketch = new FrequencySketch((int) Math.min(maxSize / ESTIMATED_ENTRY_SIZE, Integer.MAX_VALUE));
+	}
+	
+	@Override
+	public void onAdd(Node node) {
+		sketch.increment(node.key);
+		window.linkLast(node);
+		evictFromWindow();
+	}
+
+	@Override
+	public void onAccess(Node node) {
+		sketch.increment(node.key);
+		if(node.queue == window){
+			window.moveToLast(node);
+		}else if(node.queue == probation){
+			//probationеĽڵٴαʣprotected
+			unlinkFromProbation(node);
+			protectedQueue.linkLast(node);
+			demoteFromProtected();
+		}else{
+			protectedQueue.moveToLast(node);
+		}
+	}
+
+	@Override
+	public void onRemove(Node node) {
+		if(node.queue == probation){
+			unlinkFromProbation(node);
+		}else{
+			node.queue.unlink(node);
+		}
+	}
+
+	@Override
+	public Node selectVictim() {
+		Node victim = probation.peekFirst();
+		if(null == victim){
+			//probationΪʱδprotecteḓ
+			victim = protectedQueue.peekFirst();
+			return null != victim ? victim : window.peekFirst();
+		}
+		if(null == candidate){
+			return victim;
+		}
+		if(candidate == victim){
+			//probationֻʣѡߣ׵ĺѡΪܺߺһѡ߱Ƚ
+			Node next = probation.next(victim);
+			if(null == next){
+				return victim;
+			}
+			return sketch.frequency(next.key) > sketch.frequency(victim.key) ? victim : next;
+		}
+		//Ƶʸߵһ£ͬʱܺ
+		return sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+	}
+	
+	@Override
+	public void onEvictionFinished() {
+		candidate = null;
+	}
+	
+	/** ʱδʵĽڵprobationΪѡ*/
+	private void evictFromWindow(){
+		while (window.size() > windowMaxSize && !window.isEmpty()) {
+			Node node = window.peekFirst();
+			window.unlink(node);
+			probation.linkLast(node);
+			if(null == candidate){
+				candidate = node;
+			}
+		}
+	}
+	
+	/** protectedʱδʵĽڵ㽵probation뵽ѡ֮ǰΪܺ߶Ǻѡ߲Ƚ*/
+	private void demoteFromProtected(){
+		while (protectedQueue.size() > protectedMaxSize && !protectedQueue.isEmpty()) {
+			Node node = protectedQueue.peekFirst();
+			protectedQueue.unlink(node);
+			if(null == candidate){
+				probation.linkLast(node);
+			}else{
+				probation.linkBefore(node, candidate);
+			}
+		}
+	}
+	
+	private void unlinkFromProbation(Node node){
+		if(node == candidate){
+			candidate = probation.next(node);
+		}
+		probation.unlink(node);
+	}
+}
@@ -15,16 +15,21 @@
  *******************************************************************************/
 package com.zs.imagemanager.decoder;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.os.Build;
 import android.util.Log;
 
 import com.zs.imagemanager.ImageViewAware;
 import com.zs.imagemanager.IoUtils;
+import com.zs.imagemanager.LruBitmapPool;
 import com.zs.imagemanager.downloader.ImageDownloader;
 
 /**
@@ -43,7 +48,37 @@ public class BaseImageDecoder implements ImageDecoder {
 	protected static final String LOG_ROTATE_IMAGE = "Rotate image on %1$d\u00B0 [%2$s]";
 	protected static final String LOG_FLIP_IMAGE = "Flip image horizontally [%s]";
 	protected static final String ERROR_CANT_DECODE_IMAGE = "Image can't be decoded [%s]";
+	protected static final String WARN_CANT_REUSE_BITMAP = "Pooled bitmap can't be reused, decode without it [%s]";
 
+	/** Bytes of marked stream which can be read by bounds pass and still be reset, 64 Kb */
+	protected static final int MARK_READ_LIMIT = 64 * 1024;
+
+	/** Pool of bitmaps which can be reused for decoding, can be null */
+	protected final LruBitmapPool bitmapPool;
+	/** Limits memory of concurrently decoded bitmaps, can be null */
+	protected final DecodeBudget decodeBudget;
+
+	public BaseImageDecoder() {
+		this(null, null);
+	}
+
+	/**
+	 * @param bitmapPool null-ok; pool of bitmaps which will be reused through
+	 *                   {@link android.graphics.BitmapFactory.Options#inBitmap Options.inBitmap}
+	 */
+	public BaseImageDecoder(LruBitmapPool bitmapPool) {
+		this(bitmapPool, null);
+	}
+
+	/**
+	 * @param bitmapPool   null-ok; pool of bitmaps which will be reused through
+	 *                     {@link android.graphics.BitmapFactory.Options#inBitmap Options.inBitmap}
+	 * @param decodeBudget null-ok; budget which decoding waits for if too many bitmaps are being decoded at once
+	 */
+	public BaseImageDecoder(LruBitmapPool bitmapPool, DecodeBudget decodeBudget) {
+		this.bitmapPool = bitmapPool;
+		this.decodeBudget = decodeBudget;
+	}
 
 	/**
 	 * Decodes image from URI into {@link Bitmap}. Image is scaled close to incoming {@linkplain ImageSize target size}
@@ -56,29 +91,84 @@ public class BaseImageDecoder implements ImageDecoder {
 	 */
 	@Override
 	public Bitmap decode(String uri, ImageViewAware imageAware, ImageDownloader downloader, Object extraForDownloader) throws IOException {
-		Bitmap decodedBitmap;
+		Log.d(TAG, "decode-uri-->" + uri);
+		StreamSource source = new StreamSource(uri, downloader, extraForDownloader);
+		try {
+			return decode(source, uri, imageAware);
+		} finally {
+			source.close();
+		}
+	}
 
-		InputStream imageStream = getImageStream(uri, downloader, extraForDownloader);
+	/**
+	 * Decodes image file through its {@link FileDescriptor}. Bounds and decoding passes read the same descriptor
+	 * natively (it's rewound between passes), so there is no copying through Java buffers and no reopening of file.
+	 */
+	@Override
+	public Bitmap decode(File imageFile, ImageViewAware imageAware) throws IOException {
+		Log.d(TAG, "decode-file-->" + imageFile);
+		FileDescriptorSource source = new FileDescriptorSource(imageFile);
 		try {
-			Log.d(TAG, "decode-uri-->" + uri);
+			return decode(source, imageFile.getPath(), imageAware);
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Decodes image from <b>source</b>: reads bounds first if image should be subsampled. Pooled bitmap is reused and
+	 * decoding memory is limited only if <b>source</b> {@linkplain DecodeSource#canRewind() can be rewound cheaply},
+	 * extra pass isn't worth reopening (downloading again) of image.
+	 */
+	private Bitmap decode(DecodeSource source, String uri, ImageViewAware imageAware) throws IOException {
+		Bitmap decodedBitmap;
+		boolean rewindable = source.canRewind();
+		if(imageAware.isShouldCompress() || (rewindable && (bitmapPool != null || decodeBudget != null))){
+			/*ѹͼƬʱֱ¶ȡͼƬҪbitmapƽڴʱȼͼƬʵʿ*/
+			int[] imageSize = source.decodeBounds();
+			Log.d(TAG, "decode-imageSize-->width:" + imageSize[0] + " height:" + imageSize[1]);
+			Options decodingOptions;
 			if(imageAware.isShouldCompress()){
-				/*ѹͼƬ*/
-				int[] imageSize = defineImageSize(imageStream);
-				Log.d(TAG, "decode-imageSize-->width:" + imageSize[0] + " height:" + imageSize[1]);
-				imageStream = resetStream(imageStream, uri, downloader, extraForDownloader);
 				Log.d(TAG, "decode-targetSize-->width:" + imageAware.getTargetSize()[0] + " height:" + imageAware.getTargetSize()[1]);
-				Options decodingOptions = prepareDecodingOptions(imageSize, imageAware.getTargetSize());
+				decodingOptions = prepareDecodingOptions(imageSize, imageAware.getTargetSize());
 				Log.d(TAG, "decode-scale-->" + decodingOptions.inSampleSize);
-				decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
 			}else{
-				decodedBitmap = BitmapFactory.decodeStream(imageStream, null, null);
+				decodingOptions = new Options();
+			}
+			long budgetBytes = decodeBudget == null ? 0 : estimateDecodedBytes(imageSize, decodingOptions);
+			if (decodeBudget != null) {
+				decodeBudget.acquire(budgetBytes);
+			}
+			try {
+				// Failed reuse of pooled bitmap needs one more pass
+				Bitmap inBitmap = rewindable ? prepareInBitmap(imageSize, decodingOptions) : null;
+				try {
+					decodedBitmap = source.decode(decodingOptions);
+				} catch (IllegalArgumentException e) {
+					if (inBitmap == null) {
+						throw e;
+					}
+					// Pooled bitmap doesn't fit the decoded image, so decode into new bitmap
+					Log.w(TAG, WARN_CANT_REUSE_BITMAP + "-->" + uri);
+					bitmapPool.put(inBitmap);
+					inBitmap = null;
+					decodingOptions.inBitmap = null;
+					decodedBitmap = source.decode(decodingOptions);
+				}
+				if (decodedBitmap == null && inBitmap != null) {
+					bitmapPool.put(inBitmap);
+				}
+			} finally {
+				if (decodeBudget != null) {
+					decodeBudget.release(budgetBytes);
+				}
 			}
+		}else{
+			decodedBitmap = source.decode(null);
+		}
 //			imageInfo = defineImageSizeAndRotation(imageStream, decodingInfo);
 //			imageStream = resetStream(imageStream, decodingInfo);
 //			Options decodingOptions = prepareDecodingOptions(imageInfo.imageSize, decodingInfo);
-		} finally {
-			IoUtils.closeSilently(imageStream);
-		}
 
 		if (decodedBitmap == null) {
 			Log.e(TAG, ERROR_CANT_DECODE_IMAGE + "-->" + uri);
@@ -89,6 +179,170 @@ public class BaseImageDecoder implements ImageDecoder {
 		return decodedBitmap;
 	}
 
+	/**
+	 * Decodes image which is larger than <b>maxSize</b> into {@link Bitmap} fitting inside <b>maxSize</b>. Image is
+	 * subsampled during decoding and then scaled exactly, so only the result needs full memory.
+	 */
+	@Override
+	public Bitmap decodeDownscaled(String uri, int[] maxSize, ImageDownloader downloader, Object extraForDownloader) throws IOException {
+		Bitmap decodedBitmap;
+
+		StreamSource source = new StreamSource(uri, downloader, extraForDownloader);
+		try {
+			int[] imageSize = source.decodeBounds();
+			if (imageSize[0] <= 0 || imageSize[1] <= 0) {
+				Log.e(TAG, ERROR_CANT_DECODE_IMAGE + "-->" + uri);
+				return null;
+			}
+			if (imageSize[0] <= maxSize[0] && imageSize[1] <= maxSize[1]) {
+				return null;
+			}
+
+			Options decodingOptions = new Options();
+			decodingOptions.inSampleSize = computeImageSampleSize(imageSize[0], imageSize[1], maxSize[0], maxSize[1], false, true);
+			long budgetBytes = decodeBudget == null ? 0 : estimateDecodedBytes(imageSize, decodingOptions);
+			if (decodeBudget != null) {
+				decodeBudget.acquire(budgetBytes);
+			}
+			try {
+				decodedBitmap = source.decode(decodingOptions);
+			} finally {
+				if (decodeBudget != null) {
+					decodeBudget.release(budgetBytes);
+				}
+			}
+		} finally {
+			source.close();
+		}
+
+		if (decodedBitmap == null) {
+			Log.e(TAG, ERROR_CANT_DECODE_IMAGE + "-->" + uri);
+			return null;
+		}
+		// inSampleSize only downscales by powers of 2, scale the rest
+		float scale = Math.min((float) maxSize[0] / decodedBitmap.getWidth(), (float) maxSize[1] / decodedBitmap.getHeight());
+		if (scale < 1) {
+			int width = Math.max(1, Math.round(decodedBitmap.getWidth() * scale));
+			int height = Math.max(1, Math.round(decodedBitmap.getHeight() * scale));
+			Log.d(TAG, "decodeDownscaled-scale-->" + scale + " width:" + width + " height:" + height);
+			Bitmap scaledBitmap = Bitmap.createScaledBitmap(decodedBitmap, width, height, true);
+			if (scaledBitmap != decodedBitmap) {
+				decodedBitmap.recycle();
+			}
+			decodedBitmap = scaledBitmap;
+		}
+		return decodedBitmap;
+	}
+
+	/**
+	 * Source of encoded image which can be read several times: once for bounds and once (or twice, if pooled bitmap
+	 * can't be reused) for decoding. Every pass reads from the beginning of image.
+	 */
+	private interface DecodeSource {
+		/** @return <b>true</b> - if next pass usually doesn't reopen (download again) image */
+		boolean canRewind();
+
+		int[] decodeBounds() throws IOException;
+
+		Bitmap decode(Options decodingOptions) throws IOException;
+
+		void close();
+	}
+
+	/**
+	 * Reads image through {@link ImageDownloader} stream, which is reset (or reopened) between passes. Stream is marked
+	 * at the beginning if it supports mark, so bounds pass reading up to {@link #MARK_READ_LIMIT} bytes doesn't reopen
+	 * it.
+	 */
+	private final class StreamSource implements DecodeSource {
+
+		private final String uri;
+		private final ImageDownloader downloader;
+		private final Object extraForDownloader;
+		private InputStream imageStream;
+		private boolean consumed;
+
+		StreamSource(String uri, ImageDownloader downloader, Object extraForDownloader) throws IOException {
+			this.uri = uri;
+			this.downloader = downloader;
+			this.extraForDownloader = extraForDownloader;
+			this.imageStream = getImageStream(uri, downloader, extraForDownloader);
+			if (imageStream.markSupported()) {
+				imageStream.mark(MARK_READ_LIMIT);
+			}
+		}
+
+		@Override
+		public boolean canRewind() {
+			return imageStream.markSupported();
+		}
+
+		@Override
+		public int[] decodeBounds() throws IOException {
+			rewind();
+			return defineImageSize(imageStream);
+		}
+
+		@Override
+		public Bitmap decode(Options decodingOptions) throws IOException {
+			rewind();
+			return BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+		}
+
+		private void rewind() throws IOException {
+			if (consumed) {
+				imageStream = resetStream(imageStream, uri, downloader, extraForDownloader);
+			}
+			consumed = true;
+		}
+
+		@Override
+		public void close() {
+			IoUtils.closeSilently(imageStream);
+		}
+	}
+
+	/** Reads image file natively through one {@link FileDescriptor}, which is rewound between passes */
+	private static final class FileDescriptorSource implements DecodeSource {
+
+		private final FileInputStream fileStream;
+		private final FileDescriptor fd;
+
+		FileDescriptorSource(File imageFile) throws IOException {
+			fileStream = new FileInputStream(imageFile);
+			try {
+				fd = fileStream.getFD();
+			} catch (IOException e) {
+				IoUtils.closeSilently(fileStream);
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean canRewind() {
+			return true;
+		}
+
+		@Override
+		public int[] decodeBounds() throws IOException {
+			Options options = new Options();
+			options.inJustDecodeBounds = true;
+			decode(options);
+			return new int[] {options.outWidth, options.outHeight};
+		}
+
+		@Override
+		public Bitmap decode(Options decodingOptions) throws IOException {
+			fileStream.getChannel().position(0);
+			return BitmapFactory.decodeFileDescriptor(fd, null, decodingOptions);
+		}
+
+		@Override
+		public void close() {
+			IoUtils.closeSilently(fileStream);
+		}
+	}
+
 	protected InputStream getImageStream(String uri, ImageDownloader downloader, Object extraForDownloader) throws IOException {
 		return downloader.getStream(uri, extraForDownloader);
 	}
@@ -171,6 +425,42 @@ public class BaseImageDecoder implements ImageDecoder {
 		return decodingOptions;
 	}
 
+	/**
+	 * Takes bitmap from {@link #bitmapPool} which can be reused for decoding image of <b>imageSize</b> with
+	 * <b>decodingOptions</b> and sets it as {@link Options#inBitmap}. Decoded bitmap is made mutable so it can be
+	 * returned to the pool later.<br />
+	 * Before API 19 only bitmap of the same size can be reused and only if image isn't subsampled.
+	 *
+	 * @return Bitmap set as {@link Options#inBitmap}; <b>null</b> - if there is no suitable bitmap in the pool
+	 */
+	protected Bitmap prepareInBitmap(int[] imageSize, Options decodingOptions) {
+		if (bitmapPool == null || !LruBitmapPool.isReuseSupported()) {
+			return null;
+		}
+		decodingOptions.inMutable = true;
+
+		int scale = Math.max(decodingOptions.inSampleSize, 1);
+		if (scale != 1 && Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+			return null;
+		}
+		int width = (imageSize[0] + scale - 1) / scale;
+		int height = (imageSize[1] + scale - 1) / scale;
+		Bitmap inBitmap = bitmapPool.get(width, height, decodingOptions.inPreferredConfig);
+		decodingOptions.inBitmap = inBitmap;
+		return inBitmap;
+	}
+
+	/**
+	 * Estimates memory of bitmap decoded from image of <b>imageSize</b> with <b>decodingOptions</b>, 4 bytes per pixel
+	 * are assumed.
+	 */
+	protected long estimateDecodedBytes(int[] imageSize, Options decodingOptions) {
+		int scale = Math.max(decodingOptions.inSampleSize, 1);
+		long width = (imageSize[0] + scale - 1) / scale;
+		long height = (imageSize[1] + scale - 1) / scale;
+		return width * height * 4;
+	}
+
 	protected InputStream resetStream(InputStream imageStream, String uri, ImageDownloader downloader, Object extraForDownloader) throws IOException {
 		try {
 			imageStream.reset();
@@ -0,0 +1,91 @@
+package com.zs.imagemanager.decoder;
+
+import java.io.InterruptedIOException;
+
+/**
+ * ڴԤ
+ * <p/>
+ * ͬʱеĽbitmapڴԤĽȴɺٿʼ⼸߳ͬʱͼOOM
+ * ڴʱ԰Ԥ㣻Ϊ֤ûڽʱԤĵҲʼ
+ * @author zhangshuo
+ */
+public class DecodeBudget {
+
+	/** ʱָԤ*/
+	private final long maxBytes;
+	/** ǰЧԤ*/
+	private long currentMaxBytes;
+	/** еĽԤռڴ*/
+	private long inFlightBytes;
+	/** еĽ*/
+	private int inFlightCount;
+	
+	/**
+	 * @param maxBytes ͬʱеĽռõڴ
+	 */
+	public DecodeBudget(long maxBytes){
+		if(maxBytes <= 0){
+			throw new IllegalArgumentException("maxBytes <= 0");
+		}
+		this.maxBytes = maxBytes;
+		this.currentMaxBytes = maxBytes;
+	}
+	
+	/**
+	 * ԤռbytesĽڴ棬Ԥ㲻ʱȴ
+	 * @param bytes Ԥռõڴ
+	 * @throws InterruptedIOException ȴʱ̱߳ж
+	 */
+	public synchronized void acquire(long bytes) throws InterruptedIOException {
+		while (inFlightCount > 0 && inFlightBytes + bytes > currentMaxBytes) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for decode budget");
+			}
+		}
+		inFlightBytes = inFlightBytes + bytes;
+		inFlightCount++;
+	}
+	
+	/**
+	 * ͷ{@link #acquire(long)}Ԥռڴ
+	 * @param bytes acquireʱͬ
+	 */
+	public synchronized void release(long bytes){
+		inFlightBytes = inFlightBytes - bytes;
+		inFlightCount--;
+		notifyAll();
+	}
+	
+	/**
+	 * ǰЧԤ
+	 * @param multiplier ڹʱָԤı0~1Ϊ0ʱͬһʱֻһ
+	 */
+	public synchronized void setSizeMultiplier(float multiplier){
+		if(multiplier < 0 || multiplier > 1){
+			throw new IllegalArgumentException("multiplier must be between 0 and 1");
+		}
+		currentMaxBytes = (long) (maxBytes * multiplier);
+		notifyAll();
+	}
+	
+	public long maxBytes(){
+		return maxBytes;
+	}
+	
+	public synchronized long currentMaxBytes(){
+		return currentMaxBytes;
+	}
+	
+	public synchronized long inFlightBytes(){
+		return inFlightBytes;
+	}
+	
+	@Override
+	public synchronized String toString(){
+		return String.format("DecodeBudget[maxBytes=%d,currentMaxBytes=%d,inFlightBytes=%d,inFlightCount=%d]",
+				maxBytes, currentMaxBytes, inFlightBytes, inFlightCount);
+	}
+}
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package com.zs.imagemanager.decoder;
 
+import java.io.File;
 import java.io.IOException;
 
 import com.zs.imagemanager.ImageViewAware;
@@ -39,4 +40,25 @@ public interface ImageDecoder {
 	 * @throws IOException
 	 */
 	Bitmap decode(String uri, ImageViewAware imageAware, ImageDownloader downloader, Object extraForDownloader) throws IOException;
+
+	/**
+	 * Decodes local image file (i.e. cached on disk) to {@link Bitmap} according target size and other parameters.
+	 * File is opened once and the same handle is used for all decoding passes.
+	 *
+	 * @param imageFile
+	 * @param imageAware
+	 * @return Decoded bitmap; <b>null</b> - if image can't be decoded
+	 * @throws IOException
+	 */
+	Bitmap decode(File imageFile, ImageViewAware imageAware) throws IOException;
+
+	/**
+	 * Decodes image to {@link Bitmap} which fits inside <b>maxSize</b> (aspect ratio is kept). Used to downscale
+	 * images before they are stored in disk cache.
+	 *
+	 * @param maxSize maximum width and height of result bitmap
+	 * @return Downscaled bitmap; <b>null</b> - if image already fits inside <b>maxSize</b> or can't be decoded
+	 * @throws IOException
+	 */
+	Bitmap decodeDownscaled(String uri, int[] maxSize, ImageDownloader downloader, Object extraForDownloader) throws IOException;
 }
@@ -33,7 +33,9 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Locale;
 
+import com.zs.imagemanager.CacheMetadata;
 import com.zs.imagemanager.ContentLengthInputStream;
 import com.zs.imagemanager.IoUtils;
 
@@ -59,6 +61,10 @@ public class BaseImageDownloader implements ImageDownloader {
 
 	protected static final String CONTENT_CONTACTS_URI_PREFIX = "content://com.android.contacts/";
 
+	/** Heuristic freshness for responses with Last-Modified but without max-age: 10% of the age, at most one day */
+	protected static final int HEURISTIC_FRESHNESS_PERCENT = 10;
+	protected static final long MAX_HEURISTIC_FRESHNESS = 24 * 60 * 60 * 1000;
+
 	private static final String ERROR_UNSUPPORTED_SCHEME = "UIL doesn't support scheme(protocol) by default [%s]. " + "You should implement this support yourself (BaseImageDownloader.getStreamFromOtherSource(...))";
 
 	protected final Context context;
@@ -98,7 +104,10 @@ public class BaseImageDownloader implements ImageDownloader {
 	}
 
 	/**
-	 * Retrieves {@link InputStream} of image by URI (image is located in the network).
+	 * Retrieves {@link InputStream} of image by URI (image is located in the network).<br />
+	 * If <b>extra</b> is a {@link ConditionalRequest} its validators are sent as If-None-Match/If-Modified-Since and the
+	 * response cache headers are stored in it. On 304 Not Modified an empty stream is returned and only headers are
+	 * transferred.
 	 *
 	 * @param imageUri Image URI
 	 * @param extra    Auxiliary object which was passed to {@link DisplayImageOptions.Builder#extraForDownloader(Object)
@@ -111,11 +120,19 @@ public class BaseImageDownloader implements ImageDownloader {
 		HttpURLConnection conn = createConnection(imageUri, extra);
 
 		int redirectCount = 0;
-		while (conn.getResponseCode() / 100 == 3 && redirectCount < MAX_REDIRECT_COUNT) {
+		while (conn.getResponseCode() / 100 == 3 && conn.getResponseCode() != HttpURLConnection.HTTP_NOT_MODIFIED
+				&& redirectCount < MAX_REDIRECT_COUNT) {
 			conn = createConnection(conn.getHeaderField("Location"), extra);
 			redirectCount++;
 		}
 
+		ConditionalRequest request = extra instanceof ConditionalRequest ? (ConditionalRequest) extra : null;
+		if (request != null && conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			request.onNotModified(parseCacheMetadata(conn), System.currentTimeMillis());
+			conn.disconnect();
+			return new ContentLengthInputStream(new ByteArrayInputStream(new byte[0]), 0);
+		}
+
 		InputStream imageStream;
 		try {
 			imageStream = conn.getInputStream();
@@ -124,9 +141,64 @@ public class BaseImageDownloader implements ImageDownloader {
 			IoUtils.readAndCloseStream(conn.getErrorStream());
 			throw e;
 		}
+		if (request != null) {
+			request.onResponse(parseCacheMetadata(conn));
+		}
 		return new ContentLengthInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE), conn.getContentLength());
 	}
 
+	/**
+	 * Parses ETag, Last-Modified and freshness (Cache-Control max-age, Expires or heuristic based on Last-Modified)
+	 * of response
+	 *
+	 * @return <b>null</b> if response has neither validators nor freshness information
+	 */
+	protected CacheMetadata parseCacheMetadata(HttpURLConnection conn) {
+		String etag = conn.getHeaderField("ETag");
+		String lastModified = conn.getHeaderField("Last-Modified");
+		long now = System.currentTimeMillis();
+		long maxAge = parseMaxAge(conn.getHeaderField("Cache-Control"));
+		long expireTime;
+		if (maxAge >= 0) {
+			expireTime = now + maxAge * 1000;
+		} else if (conn.getExpiration() > 0) {
+			expireTime = conn.getExpiration();
+		} else if (conn.getLastModified() > 0 && conn.getLastModified() < now) {
+			long heuristic = (now - conn.getLastModified()) / 100 * HEURISTIC_FRESHNESS_PERCENT;
+			expireTime = now + Math.min(heuristic, MAX_HEURISTIC_FRESHNESS);
+		} else if (etag != null || lastModified != null) {
+			// must be revalidated every time
+			expireTime = now;
+		} else {
+			return null;
+		}
+		return new CacheMetadata(etag, lastModified, expireTime);
+	}
+
+	/**
+	 * @return max-age in seconds, 0 for no-cache/no-store, -1 if not specified
+	 */
+	private static long parseMaxAge(String cacheControl) {
+		if (cacheControl == null) {
+			return -1;
+		}
+		long maxAge = -1;
+		for (String directive : cacheControl.split(",")) {
+			directive = directive.trim().toLowerCase(Locale.US);
+			if (directive.equals("no-cache") || directive.equals("no-store")) {
+				return 0;
+			}
+			if (directive.startsWith("max-age=")) {
+				try {
+					maxAge = Math.max(0, Long.parseLong(directive.substring("max-age=".length()).replace("\"", "")));
+				} catch (NumberFormatException e) {
+					// ignore malformed directive
+				}
+			}
+		}
+		return maxAge;
+	}
+
 	/**
 	 * Create {@linkplain HttpURLConnection HTTP connection} for incoming URL
 	 *
@@ -142,6 +214,15 @@ public class BaseImageDownloader implements ImageDownloader {
 		HttpURLConnection conn = (HttpURLConnection) new URL(encodedUrl).openConnection();
 		conn.setConnectTimeout(connectTimeout);
 		conn.setReadTimeout(readTimeout);
+		if (extra instanceof ConditionalRequest) {
+			CacheMetadata cached = ((ConditionalRequest) extra).getCached();
+			if (cached != null && cached.getEtag() != null) {
+				conn.setRequestProperty("If-None-Match", cached.getEtag());
+			}
+			if (cached != null && cached.getLastModified() != null) {
+				conn.setRequestProperty("If-Modified-Since", cached.getLastModified());
+			}
+		}
 		return conn;
 	}
 
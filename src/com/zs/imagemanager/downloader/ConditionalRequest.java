@@ -0,0 +1,67 @@
+package com.zs.imagemanager.downloader;
+
+import com.zs.imagemanager.CacheMetadata;
+
+/**
+ * Ϊextra{@link ImageDownloader#getStream(String, Object)}HTTP֤
+ * <p/>
+ * ǰѻݵ{@link CacheMetadata}{@link BaseImageDownloader}ݴIf-None-MatchIf-Modified-Sinceͷ
+ * Ӧ󱣴µCacheMetadata304ʱ{@link #isNotModified()}ΪtruegetStreamؿյ
+ * ȻЧֻ{@link #getResponseMetadata()}Чڡ
+ * <p/>
+ * ÿʹһµʵֻڷ߳зʡ
+ * @author zhangshuo
+ */
+public class ConditionalRequest {
+
+	private final CacheMetadata cached;
+	private CacheMetadata responseMetadata;
+	private boolean notModified;
+
+	/**
+	 * @param cached ѻݵϢûлҪ֤ʱΪnull
+	 */
+	public ConditionalRequest(CacheMetadata cached){
+		this.cached = cached;
+	}
+
+	/**
+	 * @return ѻݵϢΪnull
+	 */
+	public CacheMetadata getCached(){
+		return cached;
+	}
+
+	/**
+	 * @return ӦеĻϢӦû֤ϢЧʱΪnull304ʱԭϢϲ
+	 */
+	public CacheMetadata getResponseMetadata(){
+		return responseMetadata;
+	}
+
+	/**
+	 * @return Ƿ񷵻304ȻЧ
+	 */
+	public boolean isNotModified(){
+		return notModified;
+	}
+
+	/**
+	 * յ200Ӧ
+	 * @param metadata ӦеĻϢΪnull
+	 */
+	void onResponse(CacheMetadata metadata){
+		this.responseMetadata = metadata;
+		this.notModified = false;
+	}
+
+	/**
+	 * յ304Ӧ
+	 * @param metadata ӦеĻϢΪnull
+	 * @param now
+	 */
+	void onNotModified(CacheMetadata metadata, long now){
+		this.responseMetadata = null == cached ? metadata : cached.merge(metadata, now);
+		this.notModified = true;
+	}
+}
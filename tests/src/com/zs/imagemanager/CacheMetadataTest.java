@@ -0,0 +1,88 @@
+package com.zs.imagemanager;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link CacheMetadata}־еı롢뼰304ʱĺϲ
+ * @author zhangshuo
+ */
+public class CacheMetadataTest extends TestCase {
+
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+	public void testEncodeDecodeRoundTrip() {
+		CacheMetadata metadata = new CacheMetadata("\"33a64df5 51 4\"", LAST_MODIFIED, 1445412480000L);
+		CacheMetadata decoded = roundTrip(metadata);
+		assertEquals(metadata.getEtag(), decoded.getEtag());
+		assertEquals(LAST_MODIFIED, decoded.getLastModified());
+		assertEquals(1445412480000L, decoded.getExpireTime());
+	}
+
+	public void testEncodedValuesContainNoSpaces() {
+		String encoded = new CacheMetadata("W/\"a b\"", LAST_MODIFIED, 1L).encode();
+		assertEquals(3, encoded.split(" ").length);
+	}
+
+	public void testMissingAndEmptyValuesDecodeAsNull() {
+		CacheMetadata decoded = roundTrip(new CacheMetadata(null, "", 5L));
+		assertNull(decoded.getEtag());
+		assertNull(decoded.getLastModified());
+		assertFalse(decoded.hasValidators());
+	}
+
+	public void testDashValueIsNotTakenForMissing() {
+		CacheMetadata decoded = roundTrip(new CacheMetadata("-", null, 5L));
+		assertEquals("-", decoded.getEtag());
+	}
+
+	public void testDecodeRejectsMalformedRecords() {
+		try {
+			CacheMetadata.decode(new String[] {"1", "-"});
+			fail("decoded record with missing value");
+		} catch (NumberFormatException expected) {
+		}
+		try {
+			CacheMetadata.decode(new String[] {"never", "-", "-"});
+			fail("decoded record with malformed expire time");
+		} catch (NumberFormatException expected) {
+		}
+		try {
+			CacheMetadata.decode(new String[] {"1", "%zz", "-"});
+			fail("decoded record with malformed escape");
+		} catch (NumberFormatException expected) {
+		}
+	}
+
+	public void testIsFresh() {
+		CacheMetadata metadata = new CacheMetadata("\"v1\"", null, 1000L);
+		assertTrue(metadata.isFresh(999L));
+		assertFalse(metadata.isFresh(1000L));
+	}
+
+	public void testMergeKeepsValidatorsMissingFromNotModifiedResponse() {
+		CacheMetadata cached = new CacheMetadata("\"v1\"", LAST_MODIFIED, 1000L);
+		CacheMetadata merged = cached.merge(new CacheMetadata(null, null, 5000L), 2000L);
+		assertEquals("\"v1\"", merged.getEtag());
+		assertEquals(LAST_MODIFIED, merged.getLastModified());
+		assertEquals(5000L, merged.getExpireTime());
+	}
+
+	public void testMergePrefersValidatorsOfNotModifiedResponse() {
+		CacheMetadata cached = new CacheMetadata("\"v1\"", LAST_MODIFIED, 1000L);
+		CacheMetadata merged = cached.merge(new CacheMetadata("\"v2\"", null, 5000L), 2000L);
+		assertEquals("\"v2\"", merged.getEtag());
+		assertEquals(LAST_MODIFIED, merged.getLastModified());
+	}
+
+	public void testMergeWithoutHeadersExpiresNow() {
+		CacheMetadata cached = new CacheMetadata("\"v1\"", null, 1000L);
+		CacheMetadata merged = cached.merge(null, 2000L);
+		assertEquals("\"v1\"", merged.getEtag());
+		assertEquals(2000L, merged.getExpireTime());
+		assertFalse(merged.isFresh(2000L));
+	}
+
+	private static CacheMetadata roundTrip(CacheMetadata metadata) {
+		return CacheMetadata.decode(metadata.encode().split(" "));
+	}
+}
@@ -0,0 +1,93 @@
+package com.zs.imagemanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+/**
+ * {@link CacheMetadata}־META¼棬´򿪻ָ
+ * @author zhangshuo
+ */
+public class LruDiskCacheMetadataTest extends AndroidTestCase {
+
+	private static final String URI = "http://example.com/image.png";
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	private static final byte[] DATA = {1, 2, 3, 4, 5, 6, 7, 8};
+
+	private File cacheDir;
+	/** д򿪵Ļ棬tearDownʱرգֹͣά߳*/
+	private final List<LruDiskCache> caches = new ArrayList<LruDiskCache>();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cacheDir = new File(getContext().getCacheDir(), "LruDiskCacheMetadataTest");
+		deleteRecursively(cacheDir);
+		assertTrue(cacheDir.mkdirs());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (LruDiskCache cache : caches) {
+			cache.close();
+		}
+		caches.clear();
+		deleteRecursively(cacheDir);
+		super.tearDown();
+	}
+
+	public void testMetadataSurvivesReopen() throws IOException {
+		LruDiskCache cache = open();
+		CacheMetadata metadata = new CacheMetadata("\"v1 a\"", LAST_MODIFIED, 1445412480000L);
+		assertTrue(cache.put(URI, new ByteArrayInputStream(DATA), null, metadata));
+		cache.flush();
+
+		CacheMetadata loaded = open().getMetadata(URI);
+		assertNotNull(loaded);
+		assertEquals("\"v1 a\"", loaded.getEtag());
+		assertEquals(LAST_MODIFIED, loaded.getLastModified());
+		assertEquals(1445412480000L, loaded.getExpireTime());
+	}
+
+	public void testLatestMetadataWinsAfterReopen() throws IOException {
+		LruDiskCache cache = open();
+		assertTrue(cache.put(URI, new ByteArrayInputStream(DATA), null, new CacheMetadata("\"v1\"", null, 1000L)));
+		//304ֻЧ
+		cache.setMetadata(URI, new CacheMetadata("\"v1\"", null, 2000L));
+		cache.flush();
+
+		LruDiskCache reopened = open();
+		assertTrue(reopened.contains(URI));
+		assertEquals(2000L, reopened.getMetadata(URI).getExpireTime());
+	}
+
+	public void testEntryWithoutMetadata() throws IOException {
+		LruDiskCache cache = open();
+		assertTrue(cache.put(URI, new ByteArrayInputStream(DATA), null, null));
+		cache.flush();
+
+		LruDiskCache reopened = open();
+		assertTrue(reopened.contains(URI));
+		assertNull(reopened.getMetadata(URI));
+	}
+
+	private LruDiskCache open() {
+		LruDiskCache cache = new LruDiskCache(cacheDir, 1024 * 1024);
+		caches.add(cache);
+		return cache;
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,307 @@
+package com.zs.imagemanager.downloader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import android.test.AndroidTestCase;
+
+import com.zs.imagemanager.CacheMetadata;
+
+/**
+ * {@link BaseImageDownloader}ӦͷĽԼ֤ϢڱHTTPϵ304200ֽ
+ * @author zhangshuo
+ */
+public class BaseImageDownloaderTest extends AndroidTestCase {
+
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	private static final long HOUR = 60 * 60 * 1000;
+
+	private BaseImageDownloader downloader;
+	private LocalHttpServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		downloader = new BaseImageDownloader(getContext());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+		}
+		super.tearDown();
+	}
+
+	public void testMaxAge() throws IOException {
+		long before = System.currentTimeMillis();
+		CacheMetadata metadata = parse(new HeaderConnection().header("Cache-Control", "public, max-age=60"));
+		long after = System.currentTimeMillis();
+		assertBetween(before + 60 * 1000, after + 60 * 1000, metadata.getExpireTime());
+		assertFalse(metadata.hasValidators());
+	}
+
+	public void testMaxAgeWinsOverExpires() throws IOException {
+		long before = System.currentTimeMillis();
+		CacheMetadata metadata = parse(new HeaderConnection()
+				.header("Cache-Control", "max-age=\"30\"")
+				.header("Expires", httpDate(before + 10 * HOUR)));
+		long after = System.currentTimeMillis();
+		assertBetween(before + 30 * 1000, after + 30 * 1000, metadata.getExpireTime());
+	}
+
+	public void testNoCacheMustRevalidate() throws IOException {
+		long before = System.currentTimeMillis();
+		CacheMetadata metadata = parse(new HeaderConnection()
+				.header("ETag", "\"v1\"")
+				.header("Cache-Control", "max-age=600, No-Cache"));
+		long after = System.currentTimeMillis();
+		assertEquals("\"v1\"", metadata.getEtag());
+		assertBetween(before, after, metadata.getExpireTime());
+	}
+
+	public void testExpires() throws IOException {
+		long expires = System.currentTimeMillis() / 1000 * 1000 + 2 * HOUR;
+		CacheMetadata metadata = parse(new HeaderConnection().header("Expires", httpDate(expires)));
+		assertEquals(expires, metadata.getExpireTime());
+	}
+
+	public void testHeuristicFreshnessFromLastModified() throws IOException {
+		long before = System.currentTimeMillis();
+		long lastModified = (before - 5 * HOUR) / 1000 * 1000;
+		CacheMetadata metadata = parse(new HeaderConnection().header("Last-Modified", httpDate(lastModified)));
+		long after = System.currentTimeMillis();
+		assertEquals(httpDate(lastModified), metadata.getLastModified());
+		// 10% of the age
+		assertBetween(before + (before - lastModified) / 100 * 10, after + (after - lastModified) / 10 + 1,
+				metadata.getExpireTime());
+	}
+
+	public void testHeuristicFreshnessIsCapped() throws IOException {
+		long before = System.currentTimeMillis();
+		CacheMetadata metadata = parse(new HeaderConnection().header("Last-Modified", httpDate(before - 100 * 24 * HOUR)));
+		long after = System.currentTimeMillis();
+		assertBetween(before + BaseImageDownloader.MAX_HEURISTIC_FRESHNESS,
+				after + BaseImageDownloader.MAX_HEURISTIC_FRESHNESS, metadata.getExpireTime());
+	}
+
+	public void testValidatorsOnlyExpireImmediately() throws IOException {
+		long before = System.currentTimeMillis();
+		CacheMetadata metadata = parse(new HeaderConnection()
+				.header("ETag", "W/\"v1\"")
+				.header("Cache-Control", "max-age=soon"));
+		long after = System.currentTimeMillis();
+		assertEquals("W/\"v1\"", metadata.getEtag());
+		assertBetween(before, after, metadata.getExpireTime());
+	}
+
+	public void testNoCacheHeaders() throws IOException {
+		assertNull(parse(new HeaderConnection().header("Content-Type", "image/png")));
+	}
+
+	public void testOkResponseStoresCacheHeaders() throws IOException {
+		server = new LocalHttpServer(response("200 OK", "image", "ETag: \"v1\"", "Cache-Control: max-age=60"));
+		ConditionalRequest request = new ConditionalRequest(null);
+
+		long before = System.currentTimeMillis();
+		String body = readFully(downloader.getStream(server.url("/a.png"), request));
+		long after = System.currentTimeMillis();
+
+		assertEquals("image", body);
+		assertFalse(request.isNotModified());
+		assertEquals("\"v1\"", request.getResponseMetadata().getEtag());
+		assertBetween(before + 60 * 1000, after + 60 * 1000, request.getResponseMetadata().getExpireTime());
+		Map<String, String> sent = server.getRequests().get(0);
+		assertFalse(sent.containsKey("if-none-match"));
+		assertFalse(sent.containsKey("if-modified-since"));
+	}
+
+	public void testNotModifiedTransfersOnlyHeaders() throws IOException {
+		server = new LocalHttpServer(response("304 Not Modified", null, "Cache-Control: max-age=120"));
+		ConditionalRequest request = new ConditionalRequest(new CacheMetadata("\"v1\"", LAST_MODIFIED, 1000L));
+
+		long before = System.currentTimeMillis();
+		InputStream is = downloader.getStream(server.url("/a.png"), request);
+		long after = System.currentTimeMillis();
+
+		assertEquals(-1, is.read());
+		is.close();
+		assertTrue(request.isNotModified());
+		Map<String, String> sent = server.getRequests().get(0);
+		assertEquals("\"v1\"", sent.get("if-none-match"));
+		assertEquals(LAST_MODIFIED, sent.get("if-modified-since"));
+		CacheMetadata metadata = request.getResponseMetadata();
+		assertEquals("\"v1\"", metadata.getEtag());
+		assertEquals(LAST_MODIFIED, metadata.getLastModified());
+		assertBetween(before + 120 * 1000, after + 120 * 1000, metadata.getExpireTime());
+	}
+
+	public void testChangedImageReplacesValidators() throws IOException {
+		server = new LocalHttpServer(response("200 OK", "changed", "ETag: \"v2\"", "Cache-Control: no-cache"));
+		ConditionalRequest request = new ConditionalRequest(new CacheMetadata("\"v1\"", null, 1000L));
+
+		String body = readFully(downloader.getStream(server.url("/a.png"), request));
+
+		assertEquals("changed", body);
+		assertFalse(request.isNotModified());
+		assertEquals("\"v2\"", request.getResponseMetadata().getEtag());
+		assertEquals("\"v1\"", server.getRequests().get(0).get("if-none-match"));
+	}
+
+	private CacheMetadata parse(HeaderConnection conn) {
+		return downloader.parseCacheMetadata(conn);
+	}
+
+	private static void assertBetween(long min, long max, long actual) {
+		assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+	}
+
+	private static String httpDate(long time) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(time));
+	}
+
+	private static String readFully(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toString("UTF-8");
+		} finally {
+			is.close();
+		}
+	}
+
+	private static byte[] response(String status, String body, String... headers) throws IOException {
+		StringBuilder sb = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+		for (String header : headers) {
+			sb.append(header).append("\r\n");
+		}
+		byte[] content = body == null ? new byte[0] : body.getBytes("UTF-8");
+		if (body != null) {
+			sb.append("Content-Length: ").append(content.length).append("\r\n");
+		}
+		sb.append("Connection: close\r\n\r\n");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(sb.toString().getBytes("ISO-8859-1"));
+		out.write(content);
+		return out.toByteArray();
+	}
+
+	/** ֻṩӦͷӣ*/
+	private static final class HeaderConnection extends HttpURLConnection {
+		private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+		HeaderConnection() throws MalformedURLException {
+			super(new URL("http://example.com/a.png"));
+		}
+
+		HeaderConnection header(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+
+		@Override
+		public String getHeaderField(String name) {
+			return headers.get(name);
+		}
+
+		@Override
+		public void connect() {
+		}
+
+		@Override
+		public void disconnect() {
+		}
+
+		@Override
+		public boolean usingProxy() {
+			return false;
+		}
+	}
+
+	/** HTTPζÿӷһԤӦ¼ͷΪСд*/
+	private static final class LocalHttpServer implements Runnable {
+		private final ServerSocket serverSocket;
+		private final byte[][] responses;
+		private final List<Map<String, String>> requests = Collections
+				.synchronizedList(new ArrayList<Map<String, String>>());
+
+		LocalHttpServer(byte[]... responses) throws IOException {
+			this.responses = responses;
+			serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+			Thread thread = new Thread(this, "LocalHttpServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		String url(String path) {
+			return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+		}
+
+		List<Map<String, String>> getRequests() {
+			return requests;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (byte[] response : responses) {
+					Socket socket = serverSocket.accept();
+					try {
+						requests.add(readHeaders(socket.getInputStream()));
+						OutputStream out = socket.getOutputStream();
+						out.write(response);
+						out.flush();
+					} finally {
+						socket.close();
+					}
+				}
+			} catch (IOException e) {
+				// closed by the test
+			}
+		}
+
+		private static Map<String, String> readHeaders(InputStream in) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "ISO-8859-1"));
+			Map<String, String> headers = new HashMap<String, String>();
+			reader.readLine(); // request line
+			String line;
+			while ((line = reader.readLine()) != null && line.length() > 0) {
+				int colon = line.indexOf(':');
+				if (colon > 0) {
+					headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+				}
+			}
+			return headers;
+		}
+
+		void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+}